@@ -3,6 +3,7 @@ package com.katsman.dkvs.client;
 import com.katsman.dkvs.common.messages.Message;
 import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
 import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
+import com.katsman.dkvs.common.utils.Consistency;
 import com.katsman.dkvs.common.utils.Operation;
 
 import java.io.IOException;
@@ -10,6 +11,8 @@ import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -38,17 +41,90 @@ public class Main {
                     disconnect();
                     break;
                 case "set":
-                    set();
+                    set(scanner.next(), 0);
+                    break;
+                case "set-ttl":
+                    set(scanner.next(), scanner.nextLong());
                     break;
                 case "get":
-                    get();
+                    get(Consistency.LINEARIZABLE, -1, -1);
+                    break;
+                case "get-bounded":
+                    get(Consistency.BOUNDED, scanner.nextInt(), scanner.nextInt());
+                    break;
+                case "get-any":
+                    get(Consistency.ANY, -1, -1);
                     break;
                 case "delete":
                     delete();
                     break;
+                case "get-version":
+                    getVersion();
+                    break;
+                case "cas":
+                    conditional(Operation.CAS, scanner.next(), scanner.next(), -1);
+                    break;
+                case "cas-version":
+                    conditional(Operation.CAS, scanner.next(), null, scanner.nextInt());
+                    break;
+                case "set-if-absent":
+                    conditional(Operation.SET_IF_ABSENT, scanner.next(), null, -1);
+                    break;
+                case "delete-if-equals":
+                    conditional(Operation.DELETE_IF_EQUALS, scanner.next(), scanner.next(), -1);
+                    break;
+                case "incr":
+                    counter(Operation.INCR, scanner.next(), null);
+                    break;
+                case "decr":
+                    counter(Operation.DECR, scanner.next(), null);
+                    break;
+                case "add":
+                    counter(Operation.ADD, scanner.next(), scanner.next());
+                    break;
+                case "scan":
+                    scan(readBound(), readBound(), scanner.nextInt());
+                    break;
+                case "scan-prefix":
+                    String prefix = scanner.next();
+                    scan(prefix, getPrefixEnd(prefix), scanner.nextInt());
+                    break;
+                case "watch":
+                    watch(Operation.WATCH, scanner.next(), scanner.nextInt(), scanner.nextInt());
+                    break;
+                case "watch-prefix":
+                    watch(Operation.WATCH_PREFIX, scanner.next(), scanner.nextInt(), scanner.nextInt());
+                    break;
+                case "mset":
+                    mset();
+                    break;
+                case "mget":
+                    mget();
+                    break;
+                case "mdelete":
+                    mdelete();
+                    break;
                 case "ping":
                     ping();
                     break;
+                case "stats":
+                    stats();
+                    break;
+                case "add-node":
+                    membership(Operation.ADD_NODE, scanner.next(), scanner.next());
+                    break;
+                case "add-learner":
+                    membership(Operation.ADD_LEARNER, scanner.next(), scanner.next());
+                    break;
+                case "remove-node":
+                    membership(Operation.REMOVE_NODE, scanner.next(), null);
+                    break;
+                case "transfer-leader":
+                    transferLeader(scanner.next());
+                    break;
+                case "move-replica":
+                    moveReplica(scanner.nextInt(), scanner.next(), scanner.next());
+                    break;
                 case "exit":
                     exit();
                     return;
@@ -91,11 +167,11 @@ public class Main {
         }
     }
 
-    private static void set() {
+    private static void set(String key, long ttl) {
         if (!connected) {
             printNotConnected();
         } else {
-            sendRequest(out, new ClientServerRequest(null, scanner.next(), scanner.nextLine().substring(1), Operation.SET, new ArrayList<>()));
+            sendRequest(out, new ClientServerRequest(null, key, scanner.nextLine().substring(1), ttl, Operation.SET, new ArrayList<>()));
             Message message = receiveResponse(in);
 
             if (message != null && message instanceof ClientServerResponse) {
@@ -112,11 +188,11 @@ public class Main {
         }
     }
 
-    private static void get() {
+    private static void get(Consistency consistency, int maxLagMillis, int maxLagEntries) {
         if (!connected) {
             printNotConnected();
         } else {
-            sendRequest(out, new ClientServerRequest(null, scanner.next(), null, Operation.GET, new ArrayList<>()));
+            sendRequest(out, new ClientServerRequest(null, scanner.next(), null, Operation.GET, consistency, maxLagMillis, maxLagEntries, new ArrayList<>()));
             Message message = receiveResponse(in);
 
             if (message != null && message instanceof ClientServerResponse) {
@@ -154,6 +230,245 @@ public class Main {
         }
     }
 
+    private static void getVersion() {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, scanner.next(), null, Operation.GET, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println(response.getResult() + " (version " + response.getVersion() + ")");
+                } else {
+                    System.out.println("Failed: " + (response.getResult().equals("null") ? "key doesn't exist" : response.getResult()));
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void conditional(Operation operation, String key, String expected, int expectedVersion) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            String value = operation == Operation.DELETE_IF_EQUALS ? null : scanner.nextLine().substring(1);
+            sendRequest(out, new ClientServerRequest(null, key, value, expected, expectedVersion, operation, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println((operation == Operation.DELETE_IF_EQUALS ? "Deleted" : "Stored successfully") + " (version " + response.getVersion() + ")");
+                } else if (response.getVersion() == -1) {
+                    System.out.println("Failed: key doesn't exist");
+                } else {
+                    System.out.println("Failed: current value is " + response.getResult() + " (version " + response.getVersion() + ")");
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void counter(Operation operation, String key, String delta) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, key, delta, operation, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println(response.getResult() + " (version " + response.getVersion() + ")");
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void mset() {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            List<String> arguments = readArguments();
+            List<String> keys = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+
+            for (int i = 0; i + 1 < arguments.size(); i += 2) {
+                keys.add(arguments.get(i));
+                values.add(arguments.get(i + 1));
+            }
+
+            sendRequest(out, new ClientServerRequest(null, null, null, keys, values, null, -1, Operation.MSET, Consistency.LINEARIZABLE, -1, -1, 0, -1, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println("Stored " + keys.size() + " keys successfully");
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void scan(String start, String end, int limit) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            String cursor = start;
+            int count = 0;
+
+            do {
+                int remaining = limit < 0 ? -1 : limit - count;
+                sendRequest(out, new ClientServerRequest(null, cursor, end, new ArrayList<>(), new ArrayList<>(), null, -1, Operation.SCAN, Consistency.LINEARIZABLE, -1, -1, 0, remaining, new ArrayList<>()));
+                Message message = receiveResponse(in);
+
+                if (message == null || !(message instanceof ClientServerResponse)) {
+                    printError();
+                    return;
+                }
+
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (!response.isSuccess()) {
+                    System.out.println("Failed: " + response.getResult());
+                    return;
+                }
+
+                for (int i = 0; i < response.getKeys().size(); i++) {
+                    System.out.println(response.getKeys().get(i) + ": " + response.getResults().get(i));
+                }
+
+                count += response.getKeys().size();
+                cursor = response.getResult() == null || response.getResult().equals("null") ? null : response.getResult();
+            } while (cursor != null && (limit < 0 || count < limit));
+
+            System.out.println("Found " + count + " keys");
+        }
+    }
+
+    private static void watch(Operation operation, String key, int from, int batches) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, key, null, null, from, operation, new ArrayList<>()));
+
+            for (int i = 0; i <= batches; i++) {
+                Message message = receiveResponse(in);
+
+                if (message == null || !(message instanceof ClientServerResponse)) {
+                    printError();
+                    return;
+                }
+
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (!response.isSuccess()) {
+                    System.out.println("Failed: " + response.getResult() + " (resume from " + (response.getVersion() + 1) + ")");
+                    return;
+                }
+
+                System.out.println("Changes up to index " + response.getVersion() + ":");
+
+                for (int j = 0; j < response.getKeys().size(); j++) {
+                    System.out.println(response.getKeys().get(j) + ": " + (response.getSuccesses().get(j) ? response.getResults().get(j) : "deleted"));
+                }
+            }
+
+            sendRequest(out, new ClientServerRequest(null, key, null, Operation.UNWATCH, new ArrayList<>()));
+            Message message;
+
+            do {
+                message = receiveResponse(in);
+            } while (message instanceof ClientServerResponse && ((ClientServerResponse) message).getOperation() != Operation.UNWATCH);
+        }
+    }
+
+    private static String readBound() {
+        String bound = scanner.next();
+        return bound.equals("-") ? null : bound;
+    }
+
+    private static String getPrefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char c = prefix.charAt(i);
+
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (c + 1);
+            }
+        }
+
+        return null;
+    }
+
+    private static void mget() {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            List<String> keys = readArguments();
+            sendRequest(out, new ClientServerRequest(null, null, null, keys, new ArrayList<>(), null, -1, Operation.MGET, Consistency.LINEARIZABLE, -1, -1, 0, -1, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    for (int i = 0; i < keys.size(); i++) {
+                        System.out.println(keys.get(i) + ": " + (response.getSuccesses().get(i) ? response.getResults().get(i) : "key doesn't exist"));
+                    }
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void mdelete() {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            List<String> keys = readArguments();
+            sendRequest(out, new ClientServerRequest(null, null, null, keys, new ArrayList<>(), null, -1, Operation.MDELETE, Consistency.LINEARIZABLE, -1, -1, 0, -1, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    for (int i = 0; i < keys.size(); i++) {
+                        System.out.println(keys.get(i) + ": " + (response.getSuccesses().get(i) ? "deleted" : "key doesn't exist"));
+                    }
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static List<String> readArguments() {
+        String line = scanner.nextLine().trim();
+        return line.isEmpty() ? new ArrayList<>() : new ArrayList<>(Arrays.asList(line.split("\\s+")));
+    }
+
     private static void ping() {
         if (!connected) {
             printNotConnected();
@@ -175,6 +490,88 @@ public class Main {
         }
     }
 
+    private static void stats() {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, null, null, Operation.STATS, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                for (int i = 0; i < response.getKeys().size(); i++) {
+                    System.out.println("Group " + response.getKeys().get(i) + ": " + response.getResults().get(i));
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void membership(Operation operation, String id, String address) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, id, address, operation, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println("Membership changed at index " + response.getVersion());
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void transferLeader(String id) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, id, null, Operation.TRANSFER_LEADER, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println("Leadership transferred");
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
+    private static void moveReplica(int group, String from, String to) {
+        if (!connected) {
+            printNotConnected();
+        } else {
+            sendRequest(out, new ClientServerRequest(null, from, to, new ArrayList<>(), new ArrayList<>(), null, -1, Operation.MOVE_REPLICA, Consistency.LINEARIZABLE, -1, -1, 0, group, new ArrayList<>()));
+            Message message = receiveResponse(in);
+
+            if (message != null && message instanceof ClientServerResponse) {
+                ClientServerResponse response = (ClientServerResponse) message;
+
+                if (response.isSuccess()) {
+                    System.out.println("Replica moved at index " + response.getVersion());
+                } else {
+                    System.out.println("Failed: " + response.getResult());
+                }
+            } else {
+                printError();
+            }
+        }
+    }
+
     private static void exit() {
         if (connected) {
             out.write("end");
@@ -188,9 +585,33 @@ public class Main {
         System.out.println("Type \"connect <host address> <port number>\" to connect (e.g. \"connect 127.0.0.1 1234\")");
         System.out.println("Type \"disconnect\" to disconnect from server");
         System.out.println("Type \"set <key> <value>\" to set value for key (e.g. \"set Hey Hello\")");
+        System.out.println("Type \"set-ttl <key> <ttl ms> <value>\" to set value for key that expires after ttl (e.g. \"set-ttl Hey 5000 Hello\")");
         System.out.println("Type \"get <key>\" to get value for key (e.g. \"get Hey\")");
+        System.out.println("Type \"get-bounded <max lag ms> <max lag entries> <key>\" to read from any node within the bound, -1 for no bound (e.g. \"get-bounded 500 -1 Hey\")");
+        System.out.println("Type \"get-any <key>\" to read local value from the connected node (e.g. \"get-any Hey\")");
         System.out.println("Type \"delete <key>\" to delete value for key (e.g. \"delete Hey\")");
+        System.out.println("Type \"get-version <key>\" to get value and version for key (e.g. \"get-version Hey\")");
+        System.out.println("Type \"cas <key> <expected value> <new value>\" to set value only if it equals expected (e.g. \"cas Hey Hello Bye\")");
+        System.out.println("Type \"cas-version <key> <version> <new value>\" to set value only if its version matches (e.g. \"cas-version Hey 5 Bye\")");
+        System.out.println("Type \"set-if-absent <key> <value>\" to set value only if key doesn't exist (e.g. \"set-if-absent Hey Hello\")");
+        System.out.println("Type \"delete-if-equals <key> <expected value>\" to delete key only if its value equals expected (e.g. \"delete-if-equals Hey Hello\")");
+        System.out.println("Type \"incr <key>\" to increment numeric value for key (e.g. \"incr Counter\")");
+        System.out.println("Type \"decr <key>\" to decrement numeric value for key (e.g. \"decr Counter\")");
+        System.out.println("Type \"add <key> <delta>\" to add delta to numeric value for key (e.g. \"add Counter 10\")");
+        System.out.println("Type \"scan <start> <end> <limit>\" to list keys in [start, end) in order, \"-\" for no bound and -1 for no limit (e.g. \"scan a c 10\")");
+        System.out.println("Type \"scan-prefix <prefix> <limit>\" to list keys with prefix in order, -1 for no limit (e.g. \"scan-prefix user: -1\")");
+        System.out.println("Type \"watch <key> <from index> <batches>\" to print changes of key starting from log index, -1 for now (e.g. \"watch Hey -1 3\")");
+        System.out.println("Type \"watch-prefix <prefix> <from index> <batches>\" to print changes of keys with prefix (e.g. \"watch-prefix user: 0 3\")");
+        System.out.println("Type \"mset <key> <value> [<key> <value> ...]\" to set several keys at once (e.g. \"mset a 1 b 2\")");
+        System.out.println("Type \"mget <key> [<key> ...]\" to get several keys at once (e.g. \"mget a b\")");
+        System.out.println("Type \"mdelete <key> [<key> ...]\" to delete several keys at once (e.g. \"mdelete a b\")");
         System.out.println("Type \"ping\" to ping server");
+        System.out.println("Type \"stats\" to print load and owned slots of every group on the connected node");
+        System.out.println("Type \"add-node <id> <host:port>\" to add node to the cluster, it votes once it catches up (e.g. \"add-node 6 127.0.0.1:1239\")");
+        System.out.println("Type \"add-learner <id> <host:port>\" to add node that replicates and serves bounded reads without voting, \"add-node <id> -\" later promotes it (e.g. \"add-learner 6 127.0.0.1:1239\")");
+        System.out.println("Type \"remove-node <id>\" to remove node from the cluster (e.g. \"remove-node 6\")");
+        System.out.println("Type \"transfer-leader <id>\" to hand leadership over to node, \"-\" picks the most up-to-date one (e.g. \"transfer-leader 3\")");
+        System.out.println("Type \"move-replica <group> <from> <to>\" to move replica of group from one node to another (e.g. \"move-replica 2 1 4\")");
         System.out.println("Type \"exit\" to exit");
         System.out.println("Type \"help\" to get this help");
     }
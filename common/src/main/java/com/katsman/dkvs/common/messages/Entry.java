@@ -1,8 +1,14 @@
 package com.katsman.dkvs.common.messages;
 
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 import com.katsman.dkvs.common.utils.Operation;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -11,16 +17,60 @@ import java.util.Scanner;
  */
 
 public class Entry implements Message {
+    public static final byte TYPE = 0;
+
+    private static final long[] NO_DELTAS = new long[0];
+
     private final int term;
     private final Operation operation;
     private final String key;
     private final String value;
+    private final List<String> keys;
+    private final List<String> values;
+    private final String expected;
+    private final int expectedVersion;
+    private final long[] deltas;
+    private final long deadline;
 
     public Entry(int term, Operation operation, String key, String value) {
+        this(term, operation, key, value, 0);
+    }
+
+    public Entry(int term, Operation operation, String key, String value, long deadline) {
+        this(term, operation, key, value, Collections.emptyList(), Collections.emptyList(), null, -1, NO_DELTAS, deadline);
+    }
+
+    public Entry(int term, Operation operation, List<String> keys, List<String> values) {
+        this(term, operation, null, null, keys, values, null, -1, NO_DELTAS, 0);
+    }
+
+    public Entry(int term, Operation operation, List<String> keys, List<String> values, long[] deltas) {
+        this(term, operation, null, null, keys, values, null, -1, deltas, 0);
+    }
+
+    public Entry(int term, Operation operation, List<String> keys, long deadline) {
+        this(term, operation, null, null, keys, Collections.emptyList(), null, -1, NO_DELTAS, deadline);
+    }
+
+    public Entry(int term, Operation operation, String key, String value, String expected, int expectedVersion) {
+        this(term, operation, key, value, Collections.emptyList(), Collections.emptyList(), expected, expectedVersion, NO_DELTAS, 0);
+    }
+
+    public Entry(int term, Operation operation, String key, long[] deltas) {
+        this(term, operation, key, null, Collections.emptyList(), Collections.emptyList(), null, -1, deltas, 0);
+    }
+
+    private Entry(int term, Operation operation, String key, String value, List<String> keys, List<String> values, String expected, int expectedVersion, long[] deltas, long deadline) {
         this.term = term;
         this.operation = operation;
         this.key = key;
         this.value = value;
+        this.keys = keys;
+        this.values = values;
+        this.expected = expected;
+        this.expectedVersion = expectedVersion;
+        this.deltas = deltas;
+        this.deadline = deadline;
     }
 
     public int getTerm() {
@@ -39,13 +89,126 @@ public class Entry implements Message {
         return value;
     }
 
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public String getExpected() {
+        return expected;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long[] getDeltas() {
+        return deltas;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public int getSize() {
+        int size = 8 + length(key) + length(value) + length(expected) + 8 * deltas.length;
+
+        for (String s : keys) {
+            size += length(s);
+        }
+
+        for (String s : values) {
+            size += length(s);
+        }
+
+        return size;
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+
+    private static List<String> receiveStrings(Scanner scanner) {
+        int n = scanner.nextInt();
+        scanner.nextLine();
+        List<String> strings = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            strings.add(scanner.nextLine());
+        }
+
+        return strings;
+    }
+
+    private static void appendStrings(StringBuilder sb, List<String> strings) {
+        sb.append(strings.size());
+
+        for (String s : strings) {
+            sb.append("\n");
+            sb.append(s == null ? "null" : s);
+        }
+    }
+
     public static Entry parse(Scanner scanner) {
         scanner.next();
         int term = scanner.nextInt();
         Operation operation = Operation.valueOf(scanner.next());
         String key = scanner.next();
         String value = scanner.nextLine().substring(1);
-        return new Entry(term, operation, key, value);
+        List<String> keys = receiveStrings(scanner);
+        List<String> values = receiveStrings(scanner);
+        long[] deltas = new long[scanner.nextInt()];
+
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = scanner.nextLong();
+        }
+
+        long deadline = scanner.nextLong();
+        int expectedVersion = scanner.nextInt();
+        String expected = scanner.nextLine().substring(1);
+        return new Entry(term, operation, key, value, keys, values, expected.equals("null") ? null : expected, expectedVersion, deltas, deadline);
+    }
+
+    public static Entry read(BinaryInput in) {
+        int term = in.readSignedVarInt();
+        Operation operation = Operation.values()[in.readByte()];
+        String key = in.readString();
+        String value = in.readString();
+        List<String> keys = in.readStrings();
+        List<String> values = in.readStrings();
+        String expected = in.readString();
+        int expectedVersion = in.readSignedVarInt();
+        long[] deltas = new long[in.readVarInt()];
+
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = in.readSignedVarLong();
+        }
+
+        long deadline = in.readVarLong();
+        return new Entry(term, operation, key, value, keys, values, expected, expectedVersion, deltas, deadline);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeByte(operation.ordinal());
+        out.writeString(key);
+        out.writeString(value);
+        out.writeStrings(keys);
+        out.writeStrings(values);
+        out.writeString(expected);
+        out.writeSignedVarInt(expectedVersion);
+        out.writeVarInt(deltas.length);
+
+        for (long delta : deltas) {
+            out.writeSignedVarLong(delta);
+        }
+
+        out.writeVarLong(deadline);
     }
 
     @Override
@@ -59,6 +222,18 @@ public class Entry implements Message {
         sb.append(key == null ? "null" : key);
         sb.append("; value = ");
         sb.append(value == null ? "null" : value);
+        sb.append("; keys = ");
+        sb.append(keys);
+        sb.append("; values = ");
+        sb.append(values);
+        sb.append("; expected = ");
+        sb.append(expected == null ? "null" : expected);
+        sb.append("; expectedVersion = ");
+        sb.append(expectedVersion);
+        sb.append("; deltas = ");
+        sb.append(Arrays.toString(deltas));
+        sb.append("; deadline = ");
+        sb.append(deadline);
         sb.append(" }");
         return sb.toString();
     }
@@ -74,6 +249,24 @@ public class Entry implements Message {
         sb.append(key == null ? "null" : key);
         sb.append(" ");
         sb.append(value == null ? "null" : value);
+        sb.append("\n");
+        appendStrings(sb, keys);
+        sb.append("\n");
+        appendStrings(sb, values);
+        sb.append("\n");
+        sb.append(deltas.length);
+
+        for (long delta : deltas) {
+            sb.append(" ");
+            sb.append(delta);
+        }
+
+        sb.append("\n");
+        sb.append(deadline);
+        sb.append("\n");
+        sb.append(expectedVersion);
+        sb.append(" ");
+        sb.append(expected == null ? "null" : expected);
         return sb.toString();
     }
 
@@ -4,8 +4,18 @@ import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
 import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
 import com.katsman.dkvs.common.messages.ssp.AppendEntriesRequest;
 import com.katsman.dkvs.common.messages.ssp.AppendEntriesResult;
+import com.katsman.dkvs.common.messages.ssp.GroupMessage;
+import com.katsman.dkvs.common.messages.ssp.InstallSnapshotRequest;
+import com.katsman.dkvs.common.messages.ssp.InstallSnapshotResponse;
+import com.katsman.dkvs.common.messages.ssp.MigrateRequest;
+import com.katsman.dkvs.common.messages.ssp.MigrateResponse;
+import com.katsman.dkvs.common.messages.ssp.ReadIndexRequest;
+import com.katsman.dkvs.common.messages.ssp.ReadIndexResponse;
+import com.katsman.dkvs.common.messages.ssp.TimeoutNowRequest;
 import com.katsman.dkvs.common.messages.ssp.VoteRequest;
 import com.katsman.dkvs.common.messages.ssp.VoteResponse;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 
 import java.net.SocketAddress;
 import java.util.Scanner;
@@ -36,11 +46,74 @@ public interface Message {
                 return AppendEntriesRequest.parse(address, scanner);
             case "AppendEntriesResult":
                 return AppendEntriesResult.parse(address, scanner);
+            case "InstallSnapshotRequest":
+                return InstallSnapshotRequest.parse(address, scanner);
+            case "InstallSnapshotResponse":
+                return InstallSnapshotResponse.parse(address, scanner);
+            case "ReadIndexRequest":
+                return ReadIndexRequest.parse(address, scanner);
+            case "ReadIndexResponse":
+                return ReadIndexResponse.parse(address, scanner);
+            case "GroupMessage":
+                return GroupMessage.parse(address, scanner);
+            case "MigrateRequest":
+                return MigrateRequest.parse(address, scanner);
+            case "MigrateResponse":
+                return MigrateResponse.parse(address, scanner);
+            case "TimeoutNowRequest":
+                return TimeoutNowRequest.parse(address, scanner);
             default:
                 return null;
         }
     }
 
+    public static Message read(BinaryInput in) {
+        if (in.readByte() != Entry.TYPE) {
+            return null;
+        }
+
+        return Entry.read(in);
+    }
+
+    public static Message read(SocketAddress address, BinaryInput in) {
+        int type = in.readByte();
+
+        switch (type) {
+            case ClientServerRequest.TYPE:
+                return ClientServerRequest.read(address, in);
+            case ClientServerResponse.TYPE:
+                return ClientServerResponse.read(address, in);
+            case VoteRequest.TYPE:
+                return VoteRequest.read(address, in);
+            case VoteResponse.TYPE:
+                return VoteResponse.read(address, in);
+            case AppendEntriesRequest.TYPE:
+                return AppendEntriesRequest.read(address, in);
+            case AppendEntriesResult.TYPE:
+                return AppendEntriesResult.read(address, in);
+            case InstallSnapshotRequest.TYPE:
+                return InstallSnapshotRequest.read(address, in);
+            case InstallSnapshotResponse.TYPE:
+                return InstallSnapshotResponse.read(address, in);
+            case ReadIndexRequest.TYPE:
+                return ReadIndexRequest.read(address, in);
+            case ReadIndexResponse.TYPE:
+                return ReadIndexResponse.read(address, in);
+            case GroupMessage.TYPE:
+                return GroupMessage.read(address, in);
+            case MigrateRequest.TYPE:
+                return MigrateRequest.read(address, in);
+            case MigrateResponse.TYPE:
+                return MigrateResponse.read(address, in);
+            case TimeoutNowRequest.TYPE:
+                return TimeoutNowRequest.read(address, in);
+            default:
+                return null;
+        }
+    }
+
+    public void write(BinaryOutput out);
+
     public String print();
 
     public SocketAddress getAddress();
@@ -1,11 +1,15 @@
 package com.katsman.dkvs.common.messages.csp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.Consistency;
 import com.katsman.dkvs.common.utils.Operation;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.stream.Collectors;
@@ -16,16 +20,52 @@ import java.util.stream.Collectors;
  */
 
 public class ClientServerRequest extends DefaultMessage {
+    public static final byte TYPE = 1;
+
     private final String key;
     private final String value;
+    private final List<String> keys;
+    private final List<String> values;
+    private final String expected;
+    private final int expectedVersion;
     private final Operation operation;
+    private final Consistency consistency;
+    private final int maxLagMillis;
+    private final int maxLagEntries;
+    private final long ttl;
+    private final int limit;
     private final List<InetSocketAddress> redirections;
 
     public ClientServerRequest(SocketAddress address, String key, String value, Operation operation, List<InetSocketAddress> redirections) {
+        this(address, key, value, Collections.emptyList(), Collections.emptyList(), null, -1, operation, Consistency.LINEARIZABLE, -1, -1, 0, -1, redirections);
+    }
+
+    public ClientServerRequest(SocketAddress address, String key, String value, long ttl, Operation operation, List<InetSocketAddress> redirections) {
+        this(address, key, value, Collections.emptyList(), Collections.emptyList(), null, -1, operation, Consistency.LINEARIZABLE, -1, -1, ttl, -1, redirections);
+    }
+
+    public ClientServerRequest(SocketAddress address, String key, String value, Operation operation, Consistency consistency, int maxLagMillis, int maxLagEntries, List<InetSocketAddress> redirections) {
+        this(address, key, value, Collections.emptyList(), Collections.emptyList(), null, -1, operation, consistency, maxLagMillis, maxLagEntries, 0, -1, redirections);
+    }
+
+    public ClientServerRequest(SocketAddress address, String key, String value, String expected, int expectedVersion, Operation operation, List<InetSocketAddress> redirections) {
+        this(address, key, value, Collections.emptyList(), Collections.emptyList(), expected, expectedVersion, operation, Consistency.LINEARIZABLE, -1, -1, 0, -1, redirections);
+    }
+
+    public ClientServerRequest(SocketAddress address, String key, String value, List<String> keys, List<String> values, String expected, int expectedVersion, Operation operation, Consistency consistency, int maxLagMillis, int maxLagEntries, long ttl, int limit, List<InetSocketAddress> redirections) {
         super(address);
         this.key = key;
         this.value = value;
+        this.keys = keys;
+        this.values = values;
+        this.expected = expected;
+        this.expectedVersion = expectedVersion;
         this.operation = operation;
+        this.consistency = consistency;
+        this.maxLagMillis = maxLagMillis;
+        this.maxLagEntries = maxLagEntries;
+        this.ttl = ttl;
+        this.limit = limit;
         this.redirections = redirections;
     }
 
@@ -37,10 +77,46 @@ public class ClientServerRequest extends DefaultMessage {
         return value;
     }
 
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public String getExpected() {
+        return expected;
+    }
+
+    public int getExpectedVersion() {
+        return expectedVersion;
+    }
+
     public Operation getOperation() {
         return operation;
     }
 
+    public Consistency getConsistency() {
+        return consistency;
+    }
+
+    public int getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    public int getMaxLagEntries() {
+        return maxLagEntries;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
     public List<InetSocketAddress> getRedirections() {
         return redirections;
     }
@@ -56,12 +132,95 @@ public class ClientServerRequest extends DefaultMessage {
         return redirections;
     }
 
+    private static List<String> receiveStrings(Scanner scanner) {
+        int n = scanner.nextInt();
+        scanner.nextLine();
+        List<String> strings = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            strings.add(scanner.nextLine());
+        }
+
+        return strings;
+    }
+
+    private static void appendStrings(StringBuilder sb, List<String> strings) {
+        sb.append(strings.size());
+
+        for (String s : strings) {
+            sb.append("\n");
+            sb.append(s == null ? "null" : s);
+        }
+    }
+
     public static ClientServerRequest parse(SocketAddress address, Scanner scanner) {
         Operation operation = Operation.valueOf(scanner.next());
         String key = scanner.next();
         String value = scanner.nextLine().substring(1);
+        Consistency consistency = Consistency.valueOf(scanner.next());
+        int maxLagMillis = scanner.nextInt();
+        int maxLagEntries = scanner.nextInt();
+        long ttl = scanner.nextLong();
+        int limit = scanner.nextInt();
+        List<String> keys = receiveStrings(scanner);
+        List<String> values = receiveStrings(scanner);
+        int expectedVersion = scanner.nextInt();
+        String expected = scanner.nextLine().substring(1);
         List<InetSocketAddress> redirections = receiveRedirections(scanner);
-        return new ClientServerRequest(address, key, value, operation, redirections);
+
+        if (operation == Operation.SCAN) {
+            key = key.equals("null") ? null : key;
+            value = value.equals("null") ? null : value;
+        }
+
+        return new ClientServerRequest(address, key, value, keys, values, expected.equals("null") ? null : expected, expectedVersion, operation, consistency, maxLagMillis, maxLagEntries, ttl, limit, redirections);
+    }
+
+    public static ClientServerRequest read(SocketAddress address, BinaryInput in) {
+        Operation operation = Operation.values()[in.readByte()];
+        String key = in.readString();
+        String value = in.readString();
+        Consistency consistency = Consistency.values()[in.readByte()];
+        int maxLagMillis = in.readSignedVarInt();
+        int maxLagEntries = in.readSignedVarInt();
+        long ttl = in.readVarLong();
+        int limit = in.readSignedVarInt();
+        List<String> keys = in.readStrings();
+        List<String> values = in.readStrings();
+        String expected = in.readString();
+        int expectedVersion = in.readSignedVarInt();
+        List<InetSocketAddress> redirections = readRedirections(in);
+        return new ClientServerRequest(address, key, value, keys, values, expected, expectedVersion, operation, consistency, maxLagMillis, maxLagEntries, ttl, limit, redirections);
+    }
+
+    private static List<InetSocketAddress> readRedirections(BinaryInput in) {
+        int n = in.readVarInt();
+        List<InetSocketAddress> redirections = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            redirections.add(in.readAddress());
+        }
+
+        return redirections;
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeByte(operation.ordinal());
+        out.writeString(key);
+        out.writeString(value);
+        out.writeByte(consistency.ordinal());
+        out.writeSignedVarInt(maxLagMillis);
+        out.writeSignedVarInt(maxLagEntries);
+        out.writeVarLong(ttl);
+        out.writeSignedVarInt(limit);
+        out.writeStrings(keys);
+        out.writeStrings(values);
+        out.writeString(expected);
+        out.writeSignedVarInt(expectedVersion);
+        out.writeVarInt(redirections.size());
+        redirections.forEach(out::writeAddress);
     }
 
     @Override
@@ -73,6 +232,24 @@ public class ClientServerRequest extends DefaultMessage {
         sb.append(key == null ? "null" : key);
         sb.append("; value = ");
         sb.append(value == null ? "null" : value);
+        sb.append("; consistency = ");
+        sb.append(consistency.name());
+        sb.append("; maxLagMillis = ");
+        sb.append(maxLagMillis);
+        sb.append("; maxLagEntries = ");
+        sb.append(maxLagEntries);
+        sb.append("; ttl = ");
+        sb.append(ttl);
+        sb.append("; limit = ");
+        sb.append(limit);
+        sb.append("; keys = ");
+        sb.append(keys);
+        sb.append("; values = ");
+        sb.append(values);
+        sb.append("; expected = ");
+        sb.append(expected == null ? "null" : expected);
+        sb.append("; expectedVersion = ");
+        sb.append(expectedVersion);
         sb.append("; redirections = [");
         sb.append(redirections.stream().map(InetSocketAddress::toString).collect(Collectors.joining(", ")));
         sb.append("] }");
@@ -89,6 +266,24 @@ public class ClientServerRequest extends DefaultMessage {
         sb.append(" ");
         sb.append(value == null ? "null" : value);
         sb.append("\n");
+        sb.append(consistency.name());
+        sb.append(" ");
+        sb.append(maxLagMillis);
+        sb.append(" ");
+        sb.append(maxLagEntries);
+        sb.append(" ");
+        sb.append(ttl);
+        sb.append(" ");
+        sb.append(limit);
+        sb.append("\n");
+        appendStrings(sb, keys);
+        sb.append("\n");
+        appendStrings(sb, values);
+        sb.append("\n");
+        sb.append(expectedVersion);
+        sb.append(" ");
+        sb.append(expected == null ? "null" : expected);
+        sb.append("\n");
         sb.append(redirections.size());
         sb.append("\n");
         sb.append(redirections.stream().map(e -> (e.getHostName() + " " + e.getPort())).collect(Collectors.joining("\n")));
@@ -1,11 +1,14 @@
 package com.katsman.dkvs.common.messages.csp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 import com.katsman.dkvs.common.utils.Operation;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.stream.Collectors;
@@ -16,16 +19,38 @@ import java.util.stream.Collectors;
  */
 
 public class ClientServerResponse extends DefaultMessage {
+    public static final byte TYPE = 2;
+
     private final Operation operation;
     private final String result;
     private final boolean success;
+    private final int version;
+    private final List<String> keys;
+    private final List<String> results;
+    private final List<Boolean> successes;
     private final List<InetSocketAddress> redirections;
 
     public ClientServerResponse(SocketAddress address, Operation operation, String result, boolean success, List<InetSocketAddress> redirections) {
+        this(address, operation, result, success, -1, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), redirections);
+    }
+
+    public ClientServerResponse(SocketAddress address, Operation operation, String result, boolean success, int version, List<InetSocketAddress> redirections) {
+        this(address, operation, result, success, version, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), redirections);
+    }
+
+    public ClientServerResponse(SocketAddress address, Operation operation, String result, boolean success, List<String> results, List<Boolean> successes, List<InetSocketAddress> redirections) {
+        this(address, operation, result, success, -1, Collections.emptyList(), results, successes, redirections);
+    }
+
+    public ClientServerResponse(SocketAddress address, Operation operation, String result, boolean success, int version, List<String> keys, List<String> results, List<Boolean> successes, List<InetSocketAddress> redirections) {
         super(address);
         this.operation = operation;
         this.result = result;
         this.success = success;
+        this.version = version;
+        this.keys = keys;
+        this.results = results;
+        this.successes = successes;
         this.redirections = redirections;
     }
 
@@ -41,6 +66,22 @@ public class ClientServerResponse extends DefaultMessage {
         return success;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getResults() {
+        return results;
+    }
+
+    public List<Boolean> getSuccesses() {
+        return successes;
+    }
+
     public List<InetSocketAddress> getRedirections() {
         return redirections;
     }
@@ -56,12 +97,92 @@ public class ClientServerResponse extends DefaultMessage {
         return redirections;
     }
 
+    private static List<String> receiveStrings(Scanner scanner) {
+        int n = scanner.nextInt();
+        scanner.nextLine();
+        List<String> strings = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            strings.add(scanner.nextLine());
+        }
+
+        return strings;
+    }
+
+    private static void appendStrings(StringBuilder sb, List<String> strings) {
+        sb.append(strings.size());
+
+        for (String s : strings) {
+            sb.append("\n");
+            sb.append(s == null ? "null" : s);
+        }
+    }
+
+    private static List<Boolean> receiveSuccesses(Scanner scanner) {
+        List<Boolean> successes = new ArrayList<>();
+        int n = scanner.nextInt();
+
+        for (int i = 0; i < n; i++) {
+            successes.add(scanner.nextBoolean());
+        }
+
+        return successes;
+    }
+
     public static ClientServerResponse parse(SocketAddress address, Scanner scanner) {
         Operation operation = Operation.valueOf(scanner.next());
         boolean success = scanner.nextBoolean();
         String result = scanner.nextLine().substring(1);
+        int version = scanner.nextInt();
+        List<String> keys = receiveStrings(scanner);
+        List<String> results = receiveStrings(scanner);
+        List<Boolean> successes = receiveSuccesses(scanner);
         List<InetSocketAddress> redirections = receiveRedirections(scanner);
-        return new ClientServerResponse(address, operation, result, success, redirections);
+        return new ClientServerResponse(address, operation, result, success, version, keys, results, successes, redirections);
+    }
+
+    public static ClientServerResponse read(SocketAddress address, BinaryInput in) {
+        Operation operation = Operation.values()[in.readByte()];
+        boolean success = in.readBoolean();
+        String result = in.readString();
+        int version = in.readSignedVarInt();
+        List<String> keys = in.readStrings();
+        List<String> results = in.readStrings();
+        int n = in.readVarInt();
+        List<Boolean> successes = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            successes.add(in.readBoolean());
+        }
+
+        List<InetSocketAddress> redirections = readRedirections(in);
+        return new ClientServerResponse(address, operation, result, success, version, keys, results, successes, redirections);
+    }
+
+    private static List<InetSocketAddress> readRedirections(BinaryInput in) {
+        int n = in.readVarInt();
+        List<InetSocketAddress> redirections = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            redirections.add(in.readAddress());
+        }
+
+        return redirections;
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeByte(operation.ordinal());
+        out.writeBoolean(success);
+        out.writeString(result);
+        out.writeSignedVarInt(version);
+        out.writeStrings(keys);
+        out.writeStrings(results);
+        out.writeVarInt(successes.size());
+        successes.forEach(out::writeBoolean);
+        out.writeVarInt(redirections.size());
+        redirections.forEach(out::writeAddress);
     }
 
     @Override
@@ -73,6 +194,14 @@ public class ClientServerResponse extends DefaultMessage {
         sb.append(success);
         sb.append("; result = ");
         sb.append(result == null ? "null" : result);
+        sb.append("; version = ");
+        sb.append(version);
+        sb.append("; keys = ");
+        sb.append(keys);
+        sb.append("; results = ");
+        sb.append(results);
+        sb.append("; successes = ");
+        sb.append(successes);
         sb.append("; redirections = [");
         sb.append(redirections.stream().map(InetSocketAddress::toString).collect(Collectors.joining(", ")));
         sb.append("] }");
@@ -89,6 +218,15 @@ public class ClientServerResponse extends DefaultMessage {
         sb.append(" ");
         sb.append(result == null ? "null" : result);
         sb.append("\n");
+        sb.append(version);
+        sb.append("\n");
+        appendStrings(sb, keys);
+        sb.append("\n");
+        appendStrings(sb, results);
+        sb.append("\n");
+        sb.append(successes.size());
+        successes.forEach(s -> sb.append(" ").append(s));
+        sb.append("\n");
         sb.append(redirections.size());
         sb.append("\n");
         sb.append(redirections.stream().map(e -> (e.getHostName() + " " + e.getPort())).collect(Collectors.joining("\n")));
@@ -2,6 +2,8 @@ package com.katsman.dkvs.common.messages.ssp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
 import com.katsman.dkvs.common.messages.Message;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 
 import java.net.SocketAddress;
 import java.util.ArrayList;
@@ -15,14 +17,17 @@ import java.util.stream.Collectors;
  */
 
 public class AppendEntriesRequest extends DefaultMessage {
+    public static final byte TYPE = 3;
+
     private final int term;
     private final int leaderId;
     private final int prevLogIndex;
     private final int prevLogTerm;
     private final List<Message> entries;
     private final int leaderCommit;
+    private final int readSequence;
 
-    public AppendEntriesRequest(SocketAddress address, int term, int leaderId, int prevLogIndex, int prevLogTerm, List<Message> entries, int leaderCommit) {
+    public AppendEntriesRequest(SocketAddress address, int term, int leaderId, int prevLogIndex, int prevLogTerm, List<Message> entries, int leaderCommit, int readSequence) {
         super(address);
         this.term = term;
         this.leaderId = leaderId;
@@ -30,6 +35,7 @@ public class AppendEntriesRequest extends DefaultMessage {
         this.prevLogTerm = prevLogTerm;
         this.entries = entries;
         this.leaderCommit = leaderCommit;
+        this.readSequence = readSequence;
     }
 
     public int getTerm() {
@@ -56,6 +62,10 @@ public class AppendEntriesRequest extends DefaultMessage {
         return leaderCommit;
     }
 
+    public int getReadSequence() {
+        return readSequence;
+    }
+
     private static List<Message> receiveEntries(Scanner scanner) {
         List<Message> entries = new ArrayList<>();
         int n = scanner.nextInt();
@@ -74,7 +84,47 @@ public class AppendEntriesRequest extends DefaultMessage {
         int prevLogTerm = scanner.nextInt();
         List<Message> entries = receiveEntries(scanner);
         int leaderCommit = scanner.nextInt();
-        return new AppendEntriesRequest(address, term, leaderId, prevLogIndex, prevLogTerm, entries, leaderCommit);
+        int readSequence = scanner.nextInt();
+        return new AppendEntriesRequest(address, term, leaderId, prevLogIndex, prevLogTerm, entries, leaderCommit, readSequence);
+    }
+
+    public static AppendEntriesRequest read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int leaderId = in.readSignedVarInt();
+        int prevLogIndex = in.readSignedVarInt();
+        int prevLogTerm = in.readSignedVarInt();
+        List<Message> entries = readEntries(in);
+        int leaderCommit = in.readSignedVarInt();
+        int readSequence = in.readSignedVarInt();
+        return new AppendEntriesRequest(address, term, leaderId, prevLogIndex, prevLogTerm, entries, leaderCommit, readSequence);
+    }
+
+    private static List<Message> readEntries(BinaryInput in) {
+        int n = in.readVarInt();
+        List<Message> entries = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            entries.add(Message.read(in));
+        }
+
+        return entries;
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(leaderId);
+        out.writeSignedVarInt(prevLogIndex);
+        out.writeSignedVarInt(prevLogTerm);
+        out.writeVarInt(entries.size());
+
+        for (Message entry : entries) {
+            entry.write(out);
+        }
+
+        out.writeSignedVarInt(leaderCommit);
+        out.writeSignedVarInt(readSequence);
     }
 
     @Override
@@ -92,6 +142,8 @@ public class AppendEntriesRequest extends DefaultMessage {
         sb.append(entries.stream().map(Object::toString).collect(Collectors.joining(", ")));
         sb.append("]; leaderCommit = ");
         sb.append(leaderCommit);
+        sb.append("; readSequence = ");
+        sb.append(readSequence);
         sb.append(" }");
         return sb.toString();
     }
@@ -113,6 +165,8 @@ public class AppendEntriesRequest extends DefaultMessage {
         sb.append(entries.stream().map(Object::toString).collect(Collectors.joining("\n")));
         sb.append("\n");
         sb.append(leaderCommit);
+        sb.append(" ");
+        sb.append(readSequence);
         return sb.toString();
     }
 }
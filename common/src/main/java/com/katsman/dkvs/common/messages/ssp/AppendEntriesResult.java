@@ -1,6 +1,8 @@
 package com.katsman.dkvs.common.messages.ssp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 
 import java.net.SocketAddress;
 import java.util.Scanner;
@@ -11,17 +13,29 @@ import java.util.Scanner;
  */
 
 public class AppendEntriesResult extends DefaultMessage {
+    public static final byte TYPE = 4;
+
     private final int term;
     private final boolean success;
     private final int length;
     private final int id;
+    private final int conflictTerm;
+    private final int conflictIndex;
+    private final int readSequence;
+
+    public AppendEntriesResult(SocketAddress address, int term, boolean success, int length, int id, int readSequence) {
+        this(address, term, success, length, id, -1, -1, readSequence);
+    }
 
-    public AppendEntriesResult(SocketAddress address, int term, boolean success, int length, int id) {
+    public AppendEntriesResult(SocketAddress address, int term, boolean success, int length, int id, int conflictTerm, int conflictIndex, int readSequence) {
         super(address);
         this.term = term;
         this.success = success;
         this.length = length;
         this.id = id;
+        this.conflictTerm = conflictTerm;
+        this.conflictIndex = conflictIndex;
+        this.readSequence = readSequence;
     }
 
     public int getTerm() {
@@ -40,12 +54,50 @@ public class AppendEntriesResult extends DefaultMessage {
         return id;
     }
 
+    public int getConflictTerm() {
+        return conflictTerm;
+    }
+
+    public int getConflictIndex() {
+        return conflictIndex;
+    }
+
+    public int getReadSequence() {
+        return readSequence;
+    }
+
     public static AppendEntriesResult parse(SocketAddress address, Scanner scanner) {
         int term = scanner.nextInt();
         boolean success = scanner.nextBoolean();
         int length = scanner.nextInt();
         int id = scanner.nextInt();
-        return new AppendEntriesResult(address, term, success, length, id);
+        int conflictTerm = scanner.nextInt();
+        int conflictIndex = scanner.nextInt();
+        int readSequence = scanner.nextInt();
+        return new AppendEntriesResult(address, term, success, length, id, conflictTerm, conflictIndex, readSequence);
+    }
+
+    public static AppendEntriesResult read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        boolean success = in.readBoolean();
+        int length = in.readSignedVarInt();
+        int id = in.readSignedVarInt();
+        int conflictTerm = in.readSignedVarInt();
+        int conflictIndex = in.readSignedVarInt();
+        int readSequence = in.readSignedVarInt();
+        return new AppendEntriesResult(address, term, success, length, id, conflictTerm, conflictIndex, readSequence);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeBoolean(success);
+        out.writeSignedVarInt(length);
+        out.writeSignedVarInt(id);
+        out.writeSignedVarInt(conflictTerm);
+        out.writeSignedVarInt(conflictIndex);
+        out.writeSignedVarInt(readSequence);
     }
 
     @Override
@@ -59,6 +111,12 @@ public class AppendEntriesResult extends DefaultMessage {
         sb.append(length);
         sb.append("; id = ");
         sb.append(id);
+        sb.append("; conflictTerm = ");
+        sb.append(conflictTerm);
+        sb.append("; conflictIndex = ");
+        sb.append(conflictIndex);
+        sb.append("; readSequence = ");
+        sb.append(readSequence);
         sb.append(" }");
         return sb.toString();
     }
@@ -74,6 +132,12 @@ public class AppendEntriesResult extends DefaultMessage {
         sb.append(length);
         sb.append(" ");
         sb.append(id);
+        sb.append(" ");
+        sb.append(conflictTerm);
+        sb.append(" ");
+        sb.append(conflictIndex);
+        sb.append(" ");
+        sb.append(readSequence);
         return sb.toString();
     }
 }
@@ -0,0 +1,75 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.messages.Message;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class GroupMessage extends DefaultMessage {
+    public static final byte TYPE = 11;
+
+    private final int group;
+    private final Message message;
+
+    public GroupMessage(int group, Message message) {
+        super(message.getAddress());
+        this.group = group;
+        this.message = message;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public static GroupMessage parse(SocketAddress address, Scanner scanner) {
+        int group = scanner.nextInt();
+        Message message = Message.parse(address, scanner);
+        return message == null ? null : new GroupMessage(group, message);
+    }
+
+    public static GroupMessage read(SocketAddress address, BinaryInput in) {
+        int group = in.readVarInt();
+        Message message = Message.read(address, in);
+        return message == null ? null : new GroupMessage(group, message);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeVarInt(group);
+        message.write(out);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("GroupMessage { group = ");
+        sb.append(group);
+        sb.append("; message = ");
+        sb.append(message.print());
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("GroupMessage ");
+        sb.append(group);
+        sb.append("\n");
+        sb.append(message.toString());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Base64;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class InstallSnapshotRequest extends DefaultMessage {
+    public static final byte TYPE = 7;
+
+    private final int term;
+    private final int leaderId;
+    private final int lastIncludedIndex;
+    private final int lastIncludedTerm;
+    private final long offset;
+    private final byte[] data;
+    private final boolean done;
+
+    public InstallSnapshotRequest(SocketAddress address, int term, int leaderId, int lastIncludedIndex, int lastIncludedTerm, long offset, byte[] data, boolean done) {
+        super(address);
+        this.term = term;
+        this.leaderId = leaderId;
+        this.lastIncludedIndex = lastIncludedIndex;
+        this.lastIncludedTerm = lastIncludedTerm;
+        this.offset = offset;
+        this.data = data;
+        this.done = done;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public int getLeaderId() {
+        return leaderId;
+    }
+
+    public int getLastIncludedIndex() {
+        return lastIncludedIndex;
+    }
+
+    public int getLastIncludedTerm() {
+        return lastIncludedTerm;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public static InstallSnapshotRequest parse(SocketAddress address, Scanner scanner) {
+        int term = scanner.nextInt();
+        int leaderId = scanner.nextInt();
+        int lastIncludedIndex = scanner.nextInt();
+        int lastIncludedTerm = scanner.nextInt();
+        long offset = scanner.nextLong();
+        boolean done = scanner.nextBoolean();
+        byte[] data = Base64.getDecoder().decode(scanner.next().substring(1));
+        return new InstallSnapshotRequest(address, term, leaderId, lastIncludedIndex, lastIncludedTerm, offset, data, done);
+    }
+
+    public static InstallSnapshotRequest read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int leaderId = in.readSignedVarInt();
+        int lastIncludedIndex = in.readSignedVarInt();
+        int lastIncludedTerm = in.readSignedVarInt();
+        long offset = in.readVarLong();
+        boolean done = in.readBoolean();
+        byte[] data = in.readBytes();
+        return new InstallSnapshotRequest(address, term, leaderId, lastIncludedIndex, lastIncludedTerm, offset, data, done);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(leaderId);
+        out.writeSignedVarInt(lastIncludedIndex);
+        out.writeSignedVarInt(lastIncludedTerm);
+        out.writeVarLong(offset);
+        out.writeBoolean(done);
+        out.writeBytes(data);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("InstallSnapshotRequest { term = ");
+        sb.append(term);
+        sb.append("; leaderId = ");
+        sb.append(leaderId);
+        sb.append("; lastIncludedIndex = ");
+        sb.append(lastIncludedIndex);
+        sb.append("; lastIncludedTerm = ");
+        sb.append(lastIncludedTerm);
+        sb.append("; offset = ");
+        sb.append(offset);
+        sb.append("; length = ");
+        sb.append(data.length);
+        sb.append("; done = ");
+        sb.append(done);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("InstallSnapshotRequest ");
+        sb.append(term);
+        sb.append(" ");
+        sb.append(leaderId);
+        sb.append(" ");
+        sb.append(lastIncludedIndex);
+        sb.append(" ");
+        sb.append(lastIncludedTerm);
+        sb.append(" ");
+        sb.append(offset);
+        sb.append(" ");
+        sb.append(done);
+        sb.append(" #");
+        sb.append(Base64.getEncoder().encodeToString(data));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class InstallSnapshotResponse extends DefaultMessage {
+    public static final byte TYPE = 8;
+
+    private final int term;
+    private final int id;
+    private final int lastIncludedIndex;
+    private final long offset;
+    private final boolean done;
+
+    public InstallSnapshotResponse(SocketAddress address, int term, int id, int lastIncludedIndex, long offset, boolean done) {
+        super(address);
+        this.term = term;
+        this.id = id;
+        this.lastIncludedIndex = lastIncludedIndex;
+        this.offset = offset;
+        this.done = done;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getLastIncludedIndex() {
+        return lastIncludedIndex;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public static InstallSnapshotResponse parse(SocketAddress address, Scanner scanner) {
+        int term = scanner.nextInt();
+        int id = scanner.nextInt();
+        int lastIncludedIndex = scanner.nextInt();
+        long offset = scanner.nextLong();
+        boolean done = scanner.nextBoolean();
+        return new InstallSnapshotResponse(address, term, id, lastIncludedIndex, offset, done);
+    }
+
+    public static InstallSnapshotResponse read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int id = in.readSignedVarInt();
+        int lastIncludedIndex = in.readSignedVarInt();
+        long offset = in.readVarLong();
+        boolean done = in.readBoolean();
+        return new InstallSnapshotResponse(address, term, id, lastIncludedIndex, offset, done);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(id);
+        out.writeSignedVarInt(lastIncludedIndex);
+        out.writeVarLong(offset);
+        out.writeBoolean(done);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("InstallSnapshotResponse { term = ");
+        sb.append(term);
+        sb.append("; id = ");
+        sb.append(id);
+        sb.append("; lastIncludedIndex = ");
+        sb.append(lastIncludedIndex);
+        sb.append("; offset = ");
+        sb.append(offset);
+        sb.append("; done = ");
+        sb.append(done);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("InstallSnapshotResponse ");
+        sb.append(term);
+        sb.append(" ");
+        sb.append(id);
+        sb.append(" ");
+        sb.append(lastIncludedIndex);
+        sb.append(" ");
+        sb.append(offset);
+        sb.append(" ");
+        sb.append(done);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,193 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.Operation;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class MigrateRequest extends DefaultMessage {
+    public static final byte TYPE = 12;
+
+    private final int group;
+    private final int requestId;
+    private final Operation operation;
+    private final int from;
+    private final int to;
+    private final List<String> keys;
+    private final List<String> values;
+    private final long[] deadlines;
+
+    public MigrateRequest(SocketAddress address, int group, int requestId, Operation operation, int from, int to, List<String> keys, List<String> values, long[] deadlines) {
+        super(address);
+        this.group = group;
+        this.requestId = requestId;
+        this.operation = operation;
+        this.from = from;
+        this.to = to;
+        this.keys = keys;
+        this.values = values;
+        this.deadlines = deadlines;
+    }
+
+    public int getGroup() {
+        return group;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public List<String> getValues() {
+        return values;
+    }
+
+    public long[] getDeadlines() {
+        return deadlines;
+    }
+
+    private static List<String> receiveStrings(Scanner scanner) {
+        int n = scanner.nextInt();
+        scanner.nextLine();
+        List<String> strings = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            String s = scanner.nextLine();
+            strings.add(s.equals("null") ? null : s);
+        }
+
+        return strings;
+    }
+
+    private static void appendStrings(StringBuilder sb, List<String> strings) {
+        sb.append(strings.size());
+
+        for (String s : strings) {
+            sb.append("\n");
+            sb.append(s == null ? "null" : s);
+        }
+    }
+
+    public static MigrateRequest parse(SocketAddress address, Scanner scanner) {
+        int group = scanner.nextInt();
+        int requestId = scanner.nextInt();
+        Operation operation = Operation.valueOf(scanner.next());
+        int from = scanner.nextInt();
+        int to = scanner.nextInt();
+        List<String> keys = receiveStrings(scanner);
+        List<String> values = receiveStrings(scanner);
+        long[] deadlines = new long[scanner.nextInt()];
+
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = scanner.nextLong();
+        }
+
+        return new MigrateRequest(address, group, requestId, operation, from, to, keys, values, deadlines);
+    }
+
+    public static MigrateRequest read(SocketAddress address, BinaryInput in) {
+        int group = in.readVarInt();
+        int requestId = in.readSignedVarInt();
+        Operation operation = Operation.values()[in.readByte()];
+        int from = in.readVarInt();
+        int to = in.readVarInt();
+        List<String> keys = in.readStrings();
+        List<String> values = in.readStrings();
+        long[] deadlines = new long[in.readVarInt()];
+
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = in.readVarLong();
+        }
+
+        return new MigrateRequest(address, group, requestId, operation, from, to, keys, values, deadlines);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeVarInt(group);
+        out.writeSignedVarInt(requestId);
+        out.writeByte(operation.ordinal());
+        out.writeVarInt(from);
+        out.writeVarInt(to);
+        out.writeStrings(keys);
+        out.writeStrings(values);
+        out.writeVarInt(deadlines.length);
+
+        for (long deadline : deadlines) {
+            out.writeVarLong(deadline);
+        }
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MigrateRequest { group = ");
+        sb.append(group);
+        sb.append("; requestId = ");
+        sb.append(requestId);
+        sb.append("; operation = ");
+        sb.append(operation.name());
+        sb.append("; from = ");
+        sb.append(from);
+        sb.append("; to = ");
+        sb.append(to);
+        sb.append("; keys = ");
+        sb.append(keys.size());
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MigrateRequest ");
+        sb.append(group);
+        sb.append(" ");
+        sb.append(requestId);
+        sb.append(" ");
+        sb.append(operation.name());
+        sb.append(" ");
+        sb.append(from);
+        sb.append(" ");
+        sb.append(to);
+        sb.append("\n");
+        appendStrings(sb, keys);
+        sb.append("\n");
+        appendStrings(sb, values);
+        sb.append("\n");
+        sb.append(deadlines.length);
+
+        for (long deadline : deadlines) {
+            sb.append(" ");
+            sb.append(deadline);
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class MigrateResponse extends DefaultMessage {
+    public static final byte TYPE = 13;
+
+    private final int requestId;
+    private final boolean success;
+
+    public MigrateResponse(SocketAddress address, int requestId, boolean success) {
+        super(address);
+        this.requestId = requestId;
+        this.success = success;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public static MigrateResponse parse(SocketAddress address, Scanner scanner) {
+        int requestId = scanner.nextInt();
+        boolean success = scanner.nextBoolean();
+        return new MigrateResponse(address, requestId, success);
+    }
+
+    public static MigrateResponse read(SocketAddress address, BinaryInput in) {
+        int requestId = in.readSignedVarInt();
+        boolean success = in.readBoolean();
+        return new MigrateResponse(address, requestId, success);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(requestId);
+        out.writeBoolean(success);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MigrateResponse { requestId = ");
+        sb.append(requestId);
+        sb.append("; success = ");
+        sb.append(success);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MigrateResponse ");
+        sb.append(requestId);
+        sb.append(" ");
+        sb.append(success);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ReadIndexRequest extends DefaultMessage {
+    public static final byte TYPE = 9;
+
+    private final int term;
+    private final int id;
+    private final int requestId;
+
+    public ReadIndexRequest(SocketAddress address, int term, int id, int requestId) {
+        super(address);
+        this.term = term;
+        this.id = id;
+        this.requestId = requestId;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public static ReadIndexRequest parse(SocketAddress address, Scanner scanner) {
+        int term = scanner.nextInt();
+        int id = scanner.nextInt();
+        int requestId = scanner.nextInt();
+        return new ReadIndexRequest(address, term, id, requestId);
+    }
+
+    public static ReadIndexRequest read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int id = in.readSignedVarInt();
+        int requestId = in.readSignedVarInt();
+        return new ReadIndexRequest(address, term, id, requestId);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(id);
+        out.writeSignedVarInt(requestId);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ReadIndexRequest { term = ");
+        sb.append(term);
+        sb.append("; id = ");
+        sb.append(id);
+        sb.append("; requestId = ");
+        sb.append(requestId);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ReadIndexRequest ");
+        sb.append(term);
+        sb.append(" ");
+        sb.append(id);
+        sb.append(" ");
+        sb.append(requestId);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ReadIndexResponse extends DefaultMessage {
+    public static final byte TYPE = 10;
+
+    private final int term;
+    private final int requestId;
+    private final int readIndex;
+    private final boolean success;
+
+    public ReadIndexResponse(SocketAddress address, int term, int requestId, int readIndex, boolean success) {
+        super(address);
+        this.term = term;
+        this.requestId = requestId;
+        this.readIndex = readIndex;
+        this.success = success;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public int getReadIndex() {
+        return readIndex;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public static ReadIndexResponse parse(SocketAddress address, Scanner scanner) {
+        int term = scanner.nextInt();
+        int requestId = scanner.nextInt();
+        int readIndex = scanner.nextInt();
+        boolean success = scanner.nextBoolean();
+        return new ReadIndexResponse(address, term, requestId, readIndex, success);
+    }
+
+    public static ReadIndexResponse read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int requestId = in.readSignedVarInt();
+        int readIndex = in.readSignedVarInt();
+        boolean success = in.readBoolean();
+        return new ReadIndexResponse(address, term, requestId, readIndex, success);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(requestId);
+        out.writeSignedVarInt(readIndex);
+        out.writeBoolean(success);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ReadIndexResponse { term = ");
+        sb.append(term);
+        sb.append("; requestId = ");
+        sb.append(requestId);
+        sb.append("; readIndex = ");
+        sb.append(readIndex);
+        sb.append("; success = ");
+        sb.append(success);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("ReadIndexResponse ");
+        sb.append(term);
+        sb.append(" ");
+        sb.append(requestId);
+        sb.append(" ");
+        sb.append(readIndex);
+        sb.append(" ");
+        sb.append(success);
+        return sb.toString();
+    }
+}
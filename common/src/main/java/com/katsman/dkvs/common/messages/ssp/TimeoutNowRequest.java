@@ -0,0 +1,74 @@
+package com.katsman.dkvs.common.messages.ssp;
+
+import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.net.SocketAddress;
+import java.util.Scanner;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class TimeoutNowRequest extends DefaultMessage {
+    public static final byte TYPE = 14;
+
+    private final int term;
+    private final int leaderId;
+
+    public TimeoutNowRequest(SocketAddress address, int term, int leaderId) {
+        super(address);
+        this.term = term;
+        this.leaderId = leaderId;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public int getLeaderId() {
+        return leaderId;
+    }
+
+    public static TimeoutNowRequest parse(SocketAddress address, Scanner scanner) {
+        int term = scanner.nextInt();
+        int leaderId = scanner.nextInt();
+        return new TimeoutNowRequest(address, term, leaderId);
+    }
+
+    public static TimeoutNowRequest read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int leaderId = in.readSignedVarInt();
+        return new TimeoutNowRequest(address, term, leaderId);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(leaderId);
+    }
+
+    @Override
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("TimeoutNowRequest { term = ");
+        sb.append(term);
+        sb.append("; leaderId = ");
+        sb.append(leaderId);
+        sb.append(" }");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("TimeoutNowRequest ");
+        sb.append(term);
+        sb.append(" ");
+        sb.append(leaderId);
+        return sb.toString();
+    }
+}
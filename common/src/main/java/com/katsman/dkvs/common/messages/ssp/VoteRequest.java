@@ -1,6 +1,8 @@
 package com.katsman.dkvs.common.messages.ssp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 
 import java.net.SocketAddress;
 import java.util.Scanner;
@@ -11,17 +13,23 @@ import java.util.Scanner;
  */
 
 public class VoteRequest extends DefaultMessage {
+    public static final byte TYPE = 5;
+
     private final int term;
     private final int candidateId;
     private final int lastLogIndex;
     private final int lastLogTerm;
+    private final boolean preVote;
+    private final boolean transfer;
 
-    public VoteRequest(SocketAddress address, int term, int candidateId, int lastLogIndex, int lastLogTerm) {
+    public VoteRequest(SocketAddress address, int term, int candidateId, int lastLogIndex, int lastLogTerm, boolean preVote, boolean transfer) {
         super(address);
         this.term = term;
         this.candidateId = candidateId;
         this.lastLogIndex = lastLogIndex;
         this.lastLogTerm = lastLogTerm;
+        this.preVote = preVote;
+        this.transfer = transfer;
     }
 
     public int getTerm() {
@@ -40,12 +48,43 @@ public class VoteRequest extends DefaultMessage {
         return lastLogTerm;
     }
 
+    public boolean isPreVote() {
+        return preVote;
+    }
+
+    public boolean isTransfer() {
+        return transfer;
+    }
+
     public static VoteRequest parse(SocketAddress address, Scanner scanner) {
         int term = scanner.nextInt();
         int candidateId = scanner.nextInt();
         int lastLogIndex = scanner.nextInt();
         int lastLogTerm = scanner.nextInt();
-        return new VoteRequest(address, term, candidateId, lastLogIndex, lastLogTerm);
+        boolean preVote = scanner.nextBoolean();
+        boolean transfer = scanner.nextBoolean();
+        return new VoteRequest(address, term, candidateId, lastLogIndex, lastLogTerm, preVote, transfer);
+    }
+
+    public static VoteRequest read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int candidateId = in.readSignedVarInt();
+        int lastLogIndex = in.readSignedVarInt();
+        int lastLogTerm = in.readSignedVarInt();
+        boolean preVote = in.readBoolean();
+        boolean transfer = in.readBoolean();
+        return new VoteRequest(address, term, candidateId, lastLogIndex, lastLogTerm, preVote, transfer);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeSignedVarInt(candidateId);
+        out.writeSignedVarInt(lastLogIndex);
+        out.writeSignedVarInt(lastLogTerm);
+        out.writeBoolean(preVote);
+        out.writeBoolean(transfer);
     }
 
     @Override
@@ -59,6 +98,10 @@ public class VoteRequest extends DefaultMessage {
         sb.append(lastLogIndex);
         sb.append("; lastLogTerm = ");
         sb.append(lastLogTerm);
+        sb.append("; preVote = ");
+        sb.append(preVote);
+        sb.append("; transfer = ");
+        sb.append(transfer);
         sb.append(" }");
         return sb.toString();
     }
@@ -74,6 +117,10 @@ public class VoteRequest extends DefaultMessage {
         sb.append(lastLogIndex);
         sb.append(" ");
         sb.append(lastLogTerm);
+        sb.append(" ");
+        sb.append(preVote);
+        sb.append(" ");
+        sb.append(transfer);
         return sb.toString();
     }
 }
@@ -1,6 +1,8 @@
 package com.katsman.dkvs.common.messages.ssp;
 
 import com.katsman.dkvs.common.messages.DefaultMessage;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
 
 import java.net.SocketAddress;
 import java.util.Scanner;
@@ -11,27 +13,60 @@ import java.util.Scanner;
  */
 
 public class VoteResponse extends DefaultMessage {
+    public static final byte TYPE = 6;
+
     private final int term;
+    private final int voterId;
     private final boolean voteGranted;
+    private final boolean preVote;
 
-    public VoteResponse(SocketAddress address, int term, boolean voteGranted) {
+    public VoteResponse(SocketAddress address, int term, int voterId, boolean voteGranted, boolean preVote) {
         super(address);
         this.term = term;
+        this.voterId = voterId;
         this.voteGranted = voteGranted;
+        this.preVote = preVote;
     }
 
     public int getTerm() {
         return term;
     }
 
+    public int getVoterId() {
+        return voterId;
+    }
+
     public boolean isVoteGranted() {
         return voteGranted;
     }
 
+    public boolean isPreVote() {
+        return preVote;
+    }
+
     public static VoteResponse parse(SocketAddress address, Scanner scanner) {
         int term = scanner.nextInt();
+        int voterId = scanner.nextInt();
         boolean voteGranted = scanner.nextBoolean();
-        return new VoteResponse(address, term, voteGranted);
+        boolean preVote = scanner.nextBoolean();
+        return new VoteResponse(address, term, voterId, voteGranted, preVote);
+    }
+
+    public static VoteResponse read(SocketAddress address, BinaryInput in) {
+        int term = in.readSignedVarInt();
+        int voterId = in.readVarInt();
+        boolean voteGranted = in.readBoolean();
+        boolean preVote = in.readBoolean();
+        return new VoteResponse(address, term, voterId, voteGranted, preVote);
+    }
+
+    @Override
+    public void write(BinaryOutput out) {
+        out.writeByte(TYPE);
+        out.writeSignedVarInt(term);
+        out.writeVarInt(voterId);
+        out.writeBoolean(voteGranted);
+        out.writeBoolean(preVote);
     }
 
     @Override
@@ -39,8 +74,12 @@ public class VoteResponse extends DefaultMessage {
         StringBuilder sb = new StringBuilder();
         sb.append("VoteResponse { term = ");
         sb.append(term);
+        sb.append("; voterId = ");
+        sb.append(voterId);
         sb.append("; voteGranted = ");
         sb.append(voteGranted);
+        sb.append("; preVote = ");
+        sb.append(preVote);
         sb.append(" }");
         return sb.toString();
     }
@@ -51,7 +90,11 @@ public class VoteResponse extends DefaultMessage {
         sb.append("VoteResponse ");
         sb.append(term);
         sb.append(" ");
+        sb.append(voterId);
+        sb.append(" ");
         sb.append(voteGranted);
+        sb.append(" ");
+        sb.append(preVote);
         return sb.toString();
     }
 }
@@ -0,0 +1,149 @@
+package com.katsman.dkvs.common.utils;
+
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class BinaryInput {
+    private final ByteBuffer buffer;
+
+    public BinaryInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int readByte() {
+        return buffer.get();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readVarInt() {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed varint!");
+    }
+
+    public int readSignedVarInt() {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readVarLong() {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed varlong!");
+    }
+
+    public long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public String readString() {
+        int length = readVarInt();
+
+        if (length == 0) {
+            return null;
+        }
+
+        length--;
+
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        String value;
+
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+
+    public byte[] readBytes() {
+        int length = readVarInt();
+
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public List<String> readStrings() {
+        int n = readVarInt();
+        List<String> values = new ArrayList<>(n);
+
+        for (int i = 0; i < n; i++) {
+            values.add(readString());
+        }
+
+        return values;
+    }
+
+    public InetSocketAddress readAddress() {
+        String host = readString();
+        int port = readVarInt();
+        return new InetSocketAddress(host, port);
+    }
+
+    public static int peekFrameLength(ByteBuffer buffer) {
+        int value = 0;
+        int position = buffer.position();
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position >= buffer.limit()) {
+                return -1;
+            }
+
+            byte b = buffer.get(position++);
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed frame length!");
+    }
+}
@@ -0,0 +1,155 @@
+package com.katsman.dkvs.common.utils;
+
+import com.katsman.dkvs.common.messages.Message;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class BinaryOutput {
+    private static final int MAX_VAR_INT_LENGTH = 5;
+
+    private ByteBuffer buffer;
+
+    public BinaryOutput(int capacity) {
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    public ByteBuffer frame(Message message) {
+        buffer.clear();
+        buffer.position(MAX_VAR_INT_LENGTH);
+        message.write(this);
+        int end = buffer.position();
+        int length = end - MAX_VAR_INT_LENGTH;
+        int start = MAX_VAR_INT_LENGTH - varIntLength(length);
+        buffer.position(start);
+        writeVarInt(length);
+        buffer.position(start);
+        buffer.limit(end);
+        return buffer;
+    }
+
+    public ByteBuffer encode(Message message) {
+        buffer.clear();
+        message.write(this);
+        buffer.flip();
+        return buffer;
+    }
+
+    public void clear() {
+        buffer.clear();
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public ByteBuffer toBuffer() {
+        ByteBuffer result = buffer.duplicate();
+        result.flip();
+        return result;
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+    }
+
+    public void writeBuffer(ByteBuffer value) {
+        ensure(value.remaining());
+        buffer.put(value);
+    }
+
+    public void writeVarInt(int value) {
+        ensure(MAX_VAR_INT_LENGTH);
+
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    public void writeSignedVarInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeVarLong(long value) {
+        ensure(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        writeVarInt(bytes.length);
+        ensure(bytes.length);
+        buffer.put(bytes);
+    }
+
+    public void writeStrings(List<String> values) {
+        writeVarInt(values.size());
+        values.forEach(this::writeString);
+    }
+
+    public void writeAddress(InetSocketAddress address) {
+        writeString(address.getHostString());
+        writeVarInt(address.getPort());
+    }
+
+    private void ensure(int length) {
+        if (buffer.remaining() < length) {
+            ByteBuffer extended = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+            buffer.flip();
+            extended.put(buffer);
+            buffer = extended;
+        }
+    }
+
+    public static int varIntLength(int value) {
+        int length = 1;
+
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,12 @@
+package com.katsman.dkvs.common.utils;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public enum Consistency {
+    LINEARIZABLE,
+    BOUNDED,
+    ANY
+}
@@ -9,5 +9,31 @@ public enum Operation {
     SET,
     GET,
     DELETE,
-    PING
+    PING,
+    MSET,
+    MGET,
+    MDELETE,
+    CAS,
+    SET_IF_ABSENT,
+    DELETE_IF_EQUALS,
+    INCR,
+    DECR,
+    ADD,
+    EXPIRE,
+    SCAN,
+    WATCH,
+    WATCH_PREFIX,
+    UNWATCH,
+    MIGRATE,
+    RELEASE,
+    PURGE,
+    IMPORT,
+    ADOPT,
+    STATS,
+    CONFIG,
+    ADD_NODE,
+    REMOVE_NODE,
+    ADD_LEARNER,
+    TRANSFER_LEADER,
+    MOVE_REPLICA
 }
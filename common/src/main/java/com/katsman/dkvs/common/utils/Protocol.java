@@ -0,0 +1,13 @@
+package com.katsman.dkvs.common.utils;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public enum Protocol {
+    TEXT,
+    BINARY;
+
+    public static final int BINARY_MAGIC = 0xB1;
+}
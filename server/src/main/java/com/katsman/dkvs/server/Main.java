@@ -2,7 +2,7 @@ package com.katsman.dkvs.server;
 
 import com.katsman.dkvs.common.utils.ParseException;
 import com.katsman.dkvs.server.utils.Configuration;
-import com.katsman.dkvs.server.workers.Server;
+import com.katsman.dkvs.server.workers.Node;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -24,11 +24,11 @@ public class Main {
 
             if (s == null || s.equals("")) {
                 try {
-                    new Server(new Configuration(fileName, 1)).start();
-                    new Server(new Configuration(fileName, 2)).start();
-                    new Server(new Configuration(fileName, 3)).start();
-                    new Server(new Configuration(fileName, 4)).start();
-                    new Server(new Configuration(fileName, 5)).start();
+                    new Node(new Configuration(fileName, 1)).start();
+                    new Node(new Configuration(fileName, 2)).start();
+                    new Node(new Configuration(fileName, 3)).start();
+                    new Node(new Configuration(fileName, 4)).start();
+                    new Node(new Configuration(fileName, 5)).start();
                 } catch (ParseException | FileNotFoundException e) {
                     System.out.println("Can't read properties file: " + e.getMessage());
                 } catch (IOException e) {
@@ -36,7 +36,7 @@ public class Main {
                 }
             } else {
                 try {
-                    new Server(new Configuration(fileName, Integer.parseInt(s))).start();
+                    new Node(new Configuration(fileName, Integer.parseInt(s))).start();
                 } catch (NumberFormatException e) {
                     System.out.println("Can't read node number!");
                 } catch (ParseException | FileNotFoundException e) {
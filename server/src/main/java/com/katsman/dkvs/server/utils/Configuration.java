@@ -1,9 +1,11 @@
 package com.katsman.dkvs.server.utils;
 
 import com.katsman.dkvs.common.utils.ParseException;
+import com.katsman.dkvs.common.utils.Protocol;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.net.InetSocketAddress;
 import java.util.*;
 
 /**
@@ -15,8 +17,35 @@ public class Configuration {
     private final int serversCount;
     private final int nodeNumber;
     private final int timeout;
-    private final List<String> hosts;
-    private final List<Integer> ports;
+    private final Protocol protocol;
+    private final int ioThreads;
+    private final long maxPendingBytes;
+    private final int maxInflight;
+    private final int maxBatchEntries;
+    private final int maxBatchBytes;
+    private final int groupCommitWindow;
+    private final long segmentSize;
+    private final int cacheEntries;
+    private final int snapshotEntries;
+    private final long snapshotBytes;
+    private final int snapshotChunkSize;
+    private final long snapshotRate;
+    private final boolean leaseReads;
+    private final boolean preVote;
+    private final boolean checkQuorum;
+    private final int preferredLeaderDelay;
+    private final int clockDrift;
+    private final int expiryTick;
+    private final int scanPageSize;
+    private final int watchBufferKeys;
+    private final int groups;
+    private final int splitOps;
+    private final long splitBytes;
+    private final int splitLatency;
+    private final int balanceInterval;
+    private final int migrateBatch;
+    private final int replicas;
+    private final Map<Integer, InetSocketAddress> addresses;
 
     public Configuration(String fileName, int nodeNumber) throws ParseException, FileNotFoundException {
         this.nodeNumber = nodeNumber - 1;
@@ -37,19 +66,75 @@ public class Configuration {
         try {
             serversCount = getNumber(properties, "servers_count");
             timeout = getNumber(properties, "timeout");
-            hosts = new ArrayList<>();
-            ports = new ArrayList<>();
+            protocol = getProtocol(properties, "protocol");
+            ioThreads = getNumber(properties, "io_threads", 2);
+            maxPendingBytes = getLong(properties, "max_pending_bytes", 4 << 20);
+            maxInflight = getNumber(properties, "max_inflight", 4);
+            maxBatchEntries = getNumber(properties, "max_batch_entries", 512);
+            maxBatchBytes = getNumber(properties, "max_batch_bytes", 1 << 20);
+            groupCommitWindow = getNumber(properties, "group_commit_window", 2);
+            segmentSize = getLong(properties, "segment_size", 64 << 20);
+            cacheEntries = getNumber(properties, "cache_entries", 4096);
+            snapshotEntries = getNumber(properties, "snapshot_entries", 100000);
+            snapshotBytes = getLong(properties, "snapshot_bytes", 64 << 20);
+            snapshotChunkSize = getNumber(properties, "snapshot_chunk_size", 256 << 10);
+            snapshotRate = getLong(properties, "snapshot_rate", 32 << 20);
+            leaseReads = getBoolean(properties, "lease_reads", false);
+            preVote = getBoolean(properties, "pre_vote", true);
+            checkQuorum = getBoolean(properties, "check_quorum", true);
+            preferredLeaderDelay = getNumber(properties, "preferred_leader_delay", 10000);
+            clockDrift = getNumber(properties, "clock_drift", 100);
+            expiryTick = getNumber(properties, "expiry_tick", 10);
+            scanPageSize = getNumber(properties, "scan_page_size", 1000);
+            watchBufferKeys = getNumber(properties, "watch_buffer_keys", 1024);
+            groups = getNumber(properties, "groups", 1);
+            splitOps = getNumber(properties, "split_ops", 0);
+            splitBytes = getLong(properties, "split_bytes", 0);
+            splitLatency = getNumber(properties, "split_latency", 0);
+            balanceInterval = getNumber(properties, "balance_interval", 10000);
+            migrateBatch = getNumber(properties, "migrate_batch", 1000);
+            replicas = getNumber(properties, "replicas", 0);
+
+            if (expiryTick <= 0) {
+                throw new ParseException("Expiry tick must be positive!");
+            }
+
+            if (scanPageSize <= 0) {
+                throw new ParseException("Scan page size must be positive!");
+            }
+
+            if (groups <= 0 || groups > ShardMap.SLOTS) {
+                throw new ParseException("Groups count must be between 1 and " + ShardMap.SLOTS + "!");
+            }
+
+            if (migrateBatch <= 0) {
+                throw new ParseException("Migrate batch must be positive!");
+            }
+
+            if (leaseReads && clockDrift >= timeout / 2) {
+                throw new ParseException("Clock drift must be less than half of timeout!");
+            }
+
+            addresses = new TreeMap<>();
 
             for (int i = 0; i < serversCount; i++) {
-                String address = get(properties, ("node." + (i + 1)));
-                int pos = address.indexOf(":");
+                get(properties, "node." + (i + 1));
+            }
 
-                if (pos == -1) {
-                    throw new ParseException("Can't read address for server " + i + "!");
-                }
+            get(properties, "node." + nodeNumber);
+
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                if (property.getKey().startsWith("node.")) {
+                    int id = Integer.parseInt(property.getKey().substring(5)) - 1;
+                    String address = property.getValue();
+                    int pos = address.indexOf(":");
 
-                hosts.add(address.substring(0, pos));
-                ports.add(Integer.parseInt(address.substring(pos + 1)));
+                    if (pos == -1) {
+                        throw new ParseException("Can't read address for server " + id + "!");
+                    }
+
+                    addresses.put(id, new InetSocketAddress(address.substring(0, pos), Integer.parseInt(address.substring(pos + 1))));
+                }
             }
         } catch (NumberFormatException e) {
             throw new ParseException("Can't read number!");
@@ -68,18 +153,158 @@ public class Configuration {
         return timeout;
     }
 
-    public List<String> getHosts() {
-        return hosts;
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
+    public int getMaxBatchEntries() {
+        return maxBatchEntries;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public int getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public int getCacheEntries() {
+        return cacheEntries;
+    }
+
+    public int getSnapshotEntries() {
+        return snapshotEntries;
+    }
+
+    public long getSnapshotBytes() {
+        return snapshotBytes;
+    }
+
+    public int getSnapshotChunkSize() {
+        return snapshotChunkSize;
+    }
+
+    public long getSnapshotRate() {
+        return snapshotRate;
+    }
+
+    public boolean isLeaseReads() {
+        return leaseReads;
+    }
+
+    public boolean isPreVote() {
+        return preVote;
     }
 
-    public List<Integer> getPorts() {
-        return ports;
+    public boolean isCheckQuorum() {
+        return checkQuorum;
+    }
+
+    public int getPreferredLeaderDelay() {
+        return preferredLeaderDelay;
+    }
+
+    public int getClockDrift() {
+        return clockDrift;
+    }
+
+    public int getExpiryTick() {
+        return expiryTick;
+    }
+
+    public int getScanPageSize() {
+        return scanPageSize;
+    }
+
+    public int getWatchBufferKeys() {
+        return watchBufferKeys;
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public int getSplitOps() {
+        return splitOps;
+    }
+
+    public long getSplitBytes() {
+        return splitBytes;
+    }
+
+    public int getSplitLatency() {
+        return splitLatency;
+    }
+
+    public int getBalanceInterval() {
+        return balanceInterval;
+    }
+
+    public int getMigrateBatch() {
+        return migrateBatch;
+    }
+
+    public int getReplicas() {
+        return replicas <= 0 ? serversCount : Math.min(replicas, serversCount);
+    }
+
+    public boolean isPartialReplication() {
+        return getReplicas() < serversCount;
+    }
+
+    public Set<Integer> getNodeIds() {
+        return addresses.keySet();
+    }
+
+    public InetSocketAddress getAddress(int id) {
+        return addresses.get(id);
     }
 
     private int getNumber(Map<String, String> properties, String key) throws NumberFormatException, ParseException {
         return Integer.parseInt(get(properties, key));
     }
 
+    private int getNumber(Map<String, String> properties, String key, int defaultValue) throws NumberFormatException {
+        return properties.containsKey(key) ? Integer.parseInt(properties.get(key)) : defaultValue;
+    }
+
+    private long getLong(Map<String, String> properties, String key, long defaultValue) throws NumberFormatException {
+        return properties.containsKey(key) ? Long.parseLong(properties.get(key)) : defaultValue;
+    }
+
+    private boolean getBoolean(Map<String, String> properties, String key, boolean defaultValue) {
+        return properties.containsKey(key) ? Boolean.parseBoolean(properties.get(key)) : defaultValue;
+    }
+
+    private Protocol getProtocol(Map<String, String> properties, String key) throws ParseException {
+        if (!properties.containsKey(key)) {
+            return Protocol.BINARY;
+        }
+
+        try {
+            return Protocol.valueOf(properties.get(key).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Unknown protocol: " + properties.get(key));
+        }
+    }
+
     private String get(Map<String, String> properties, String key) throws ParseException {
         if (!properties.containsKey(key)) {
             throw new ParseException("Unknown property: " + key);
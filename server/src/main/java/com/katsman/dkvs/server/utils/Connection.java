@@ -1,129 +1,369 @@
 package com.katsman.dkvs.server.utils;
 
 import com.katsman.dkvs.common.messages.Message;
-import com.katsman.dkvs.server.workers.Server;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.Protocol;
+import com.katsman.dkvs.server.workers.Node;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayDeque;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Alexey Katsman
  * @since 14.06.16
  */
 
-public class Connection {
-    private final Socket socket;
-    private final QueryReader reader;
-    private final QueryWriter writer;
+public class Connection implements EventLoop.Handler {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final Node node;
+    private final ConnectionFactory factory;
+    private final SocketAddress address;
+    private final BinaryOutput output;
+    private final Queue<ByteBuffer> outgoing;
+    private final ArrayDeque<ByteBuffer> writing;
+    private final ByteBuffer[] gather;
+    private final AtomicLong pendingBytes;
+    private final AtomicBoolean flushScheduled;
+    private final long highWatermark;
+    private final long lowWatermark;
+
+    private SelectionKey key;
+    private ByteBuffer readBuffer;
+    private int expected;
+    private boolean readPaused;
 
     private volatile boolean active;
+    private volatile Protocol protocol;
 
-    public Connection(Socket socket, Server server) throws IOException {
-        this.socket = socket;
-        reader = new QueryReader(socket, server);
-        writer = new QueryWriter(socket);
+    public Connection(SocketChannel channel, SocketAddress address, EventLoop loop, Node node, ConnectionFactory factory, Protocol protocol, long maxPendingBytes) {
+        this.channel = channel;
+        this.address = address;
+        this.loop = loop;
+        this.node = node;
+        this.factory = factory;
+        this.protocol = protocol;
+        output = new BinaryOutput(BUFFER_SIZE);
+        outgoing = new ConcurrentLinkedQueue<>();
+        writing = new ArrayDeque<>();
+        gather = new ByteBuffer[MAX_GATHER];
+        pendingBytes = new AtomicLong();
+        flushScheduled = new AtomicBoolean();
+        highWatermark = maxPendingBytes;
+        lowWatermark = maxPendingBytes / 2;
+        readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
         active = true;
+
+        if (protocol == Protocol.BINARY) {
+            ByteBuffer magic = ByteBuffer.allocate(1);
+            magic.put((byte) Protocol.BINARY_MAGIC);
+            magic.flip();
+            enqueue(magic);
+        }
     }
 
     public boolean isActive() {
         return active;
     }
 
-    private class QueryReader extends Thread {
-        private final Scanner scanner;
-        private final Server server;
-
-        public QueryReader(Socket socket, Server server) throws IOException {
-            scanner = new Scanner(socket.getInputStream());
-            this.server = server;
-        }
-
-        @Override
-        public void run() {
-            while (active) {
-                try {
-                    if (scanner.next().equals("message")) {
-                        Message message = Message.parse(socket.getRemoteSocketAddress(), scanner);
-
-                        if (message != null) {
-                            server.add(message);
-                        } else {
-                            close();
-                        }
-                    } else {
-                        close();
-                    }
-                } catch (NoSuchElementException | IllegalStateException e) {
-                    close();
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public boolean isWritable() {
+        return pendingBytes.get() < highWatermark;
+    }
+
+    public void start(boolean connecting) {
+        loop.execute(() -> {
+            try {
+                key = loop.register(channel, connecting ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ, this);
+
+                if (!connecting) {
+                    flush();
                 }
+            } catch (IOException | RuntimeException e) {
+                close();
             }
+        });
+    }
+
+    public synchronized void send(Message message) {
+        if (!active) {
+            return;
+        }
+
+        if (pendingBytes.get() >= 2 * highWatermark) {
+            close();
+            return;
+        }
+
+        ByteBuffer buffer;
+
+        if (protocol == Protocol.BINARY) {
+            ByteBuffer frame = output.frame(message);
+            buffer = ByteBuffer.allocate(frame.remaining());
+            buffer.put(frame);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(("message " + message + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        enqueue(buffer);
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
         }
     }
 
-    private class QueryWriter extends Thread {
-        private final PrintWriter writer;
-        private final Queue<Message> requests;
-
-        public QueryWriter(Socket socket) throws IOException {
-            writer = new PrintWriter(socket.getOutputStream());
-            requests = new ArrayDeque<>();
-        }
-
-        @Override
-        public void run() {
-            while (active) {
-                Message message = null;
-
-                while (message == null) {
-                    synchronized (requests) {
-                        if (!requests.isEmpty()) {
-                            message = requests.poll();
-                        } else {
-                            try {
-                                requests.wait();
-                            } catch (InterruptedException e) {
-                                return;
-                            }
-                        }
-                    }
+    @Override
+    public void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                if (!channel.finishConnect()) {
+                    return;
                 }
 
-                writer.write("message " + message + "\n");
-                writer.flush();
+                key.interestOps(SelectionKey.OP_READ);
+                flush();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                read();
             }
-        }
 
-        public void send(Message message) {
-            synchronized (requests) {
-                requests.add(message);
-                requests.notify();
+            if (key.isValid() && key.isWritable()) {
+                write();
             }
+        } catch (IOException | RuntimeException e) {
+            close();
         }
     }
 
-    public void send(Message message) {
-        writer.send(message);
+    public void close() {
+        if (!active) {
+            return;
+        }
+
+        active = false;
+        factory.remove(this);
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+
+        }
     }
 
-    public void start() {
-        reader.start();
-        writer.start();
+    private void enqueue(ByteBuffer buffer) {
+        outgoing.add(buffer);
+        pendingBytes.addAndGet(buffer.remaining());
     }
 
-    public void close() {
-        active = false;
+    private void flush() {
+        flushScheduled.set(false);
+
+        if (key == null || !key.isValid() || (key.interestOps() & SelectionKey.OP_CONNECT) != 0) {
+            return;
+        }
 
         try {
-            socket.close();
-        } catch (IOException ignored) {
+            write();
+        } catch (IOException | RuntimeException e) {
+            close();
+        }
+    }
+
+    private void write() throws IOException {
+        ByteBuffer buffer;
+
+        while ((buffer = outgoing.poll()) != null) {
+            writing.add(buffer);
+        }
+
+        while (!writing.isEmpty()) {
+            int n = 0;
+
+            for (ByteBuffer b : writing) {
+                if (n == MAX_GATHER) {
+                    break;
+                }
+
+                gather[n++] = b;
+            }
+
+            long written = channel.write(gather, 0, n);
+            pendingBytes.addAndGet(-written);
+
+            while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                writing.poll();
+            }
+
+            if (written == 0) {
+                break;
+            }
+        }
+
+        for (int i = 0; i < MAX_GATHER; i++) {
+            gather[i] = null;
+        }
+
+        if (writing.isEmpty()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        updateReadInterest();
+    }
+
+    private void updateReadInterest() {
+        long pending = pendingBytes.get();
+
+        if (!readPaused && pending >= highWatermark) {
+            readPaused = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        } else if (readPaused && pending <= lowWatermark) {
+            readPaused = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void read() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            readBuffer.flip();
+            readBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2).put(readBuffer);
+        }
+
+        int read = channel.read(readBuffer);
+
+        if (read == -1) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+
+        if (protocol == null && readBuffer.hasRemaining()) {
+            if ((readBuffer.get(readBuffer.position()) & 0xFF) == Protocol.BINARY_MAGIC) {
+                readBuffer.get();
+                protocol = Protocol.BINARY;
+            } else {
+                protocol = Protocol.TEXT;
+            }
+        }
+
+        if (protocol == Protocol.BINARY) {
+            readBinary();
+        } else if (protocol == Protocol.TEXT) {
+            readText();
+        }
+
+        readBuffer.compact();
+
+        if (expected > readBuffer.capacity()) {
+            readBuffer.flip();
+            readBuffer = ByteBuffer.allocate(expected).put(readBuffer);
+        }
+    }
+
+    private void readBinary() {
+        while (active) {
+            int length = BinaryInput.peekFrameLength(readBuffer);
+
+            if (length < 0) {
+                return;
+            }
+
+            int start = readBuffer.position() + BinaryOutput.varIntLength(length);
+
+            if (start + length > readBuffer.limit()) {
+                expected = start + length - readBuffer.position();
+                return;
+            }
+
+            int limit = readBuffer.limit();
+            readBuffer.position(start);
+            readBuffer.limit(start + length);
+            Message message = Message.read(address, new BinaryInput(readBuffer));
+            readBuffer.limit(limit);
+            readBuffer.position(start + length);
+
+            if (message == null) {
+                close();
+                return;
+            }
+
+            node.add(message);
+        }
+    }
+
+    private void readText() {
+        int end = readBuffer.limit();
+
+        while (end > readBuffer.position() && readBuffer.get(end - 1) != '\n') {
+            end--;
+        }
+
+        if (end == readBuffer.position()) {
+            return;
+        }
+
+        byte[] bytes = new byte[end - readBuffer.position()];
+        readBuffer.get(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+
+        while (active) {
+            Scanner scanner = new Scanner(text);
+
+            if (!scanner.hasNext()) {
+                return;
+            }
+
+            Message message;
+
+            try {
+                if (!scanner.next().equals("message")) {
+                    close();
+                    return;
+                }
+
+                message = Message.parse(address, scanner);
+            } catch (NoSuchElementException e) {
+                readBuffer.position(readBuffer.position() - text.getBytes(StandardCharsets.UTF_8).length);
+                return;
+            } catch (IllegalArgumentException e) {
+                close();
+                return;
+            }
+
+            if (message == null) {
+                close();
+                return;
+            }
 
-        } finally {
-            writer.interrupt();
+            node.add(message);
+            scanner.useDelimiter("\\z");
+            text = scanner.hasNext() ? scanner.next() : "";
         }
     }
 }
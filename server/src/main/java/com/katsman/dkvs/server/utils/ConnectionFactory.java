@@ -1,15 +1,18 @@
 package com.katsman.dkvs.server.utils;
 
 import com.katsman.dkvs.common.messages.Message;
-import com.katsman.dkvs.server.workers.Server;
+import com.katsman.dkvs.common.utils.Protocol;
+import com.katsman.dkvs.server.workers.Node;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.net.SocketAddress;
-import java.util.HashMap;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Alexey Katsman
@@ -18,51 +21,92 @@ import java.util.Map;
 
 public class ConnectionFactory {
     private final Map<SocketAddress, Connection> connections;
-    private final Server server;
-    private final ServerSocket serverSocket;
-    private final int timeout;
-    private final ConnectionReader reader;
+    private final Node node;
+    private final ServerSocketChannel serverChannel;
+    private final Protocol protocol;
+    private final long maxPendingBytes;
+    private final EventLoop[] loops;
     private final ConnectionWriter writer;
 
+    private int nextLoop;
+
     private volatile boolean active;
 
-    public ConnectionFactory(Configuration configuration, Server server) throws IOException {
-        connections = new HashMap<>();
-        this.server = server;
-        serverSocket = new ServerSocket();
-        String host = configuration.getHosts().get(configuration.getNodeNumber());
-        int port = configuration.getPorts().get(configuration.getNodeNumber());
-        serverSocket.bind(new InetSocketAddress(host, port));
-        timeout = configuration.getTimeout();
-        reader = new ConnectionReader();
+    public ConnectionFactory(Configuration configuration, Node node) throws IOException {
+        connections = new ConcurrentHashMap<>();
+        this.node = node;
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(configuration.getAddress(configuration.getNodeNumber()));
+        serverChannel.configureBlocking(false);
+        protocol = configuration.getProtocol();
+        maxPendingBytes = configuration.getMaxPendingBytes();
+        loops = new EventLoop[configuration.getIoThreads()];
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop("dkvs-" + (configuration.getNodeNumber() + 1) + "-io-" + i);
+        }
+
         writer = new ConnectionWriter();
         active = true;
     }
 
-    private class ConnectionReader extends Thread {
-        @Override
-        public void run() {
-            while (active) {
-                try {
-                    Socket socket = serverSocket.accept();
-                    SocketAddress address = socket.getRemoteSocketAddress();
-
-                    synchronized (connections) {
-                        if (connections.containsKey(address)) {
-                            connections.get(address).close();
-                        }
+    private void accept(SelectionKey key) {
+        try {
+            SocketChannel channel;
 
-                        Connection connection = new Connection(socket, server);
-                        connections.put(address, connection);
-                        connection.start();
-                    }
-                } catch (IOException ignored) {
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SocketAddress address = channel.getRemoteAddress();
+                Connection connection = new Connection(channel, address, nextLoop(), node, this, null, maxPendingBytes);
+                Connection previous = connections.put(address, connection);
 
+                if (previous != null) {
+                    previous.close();
                 }
+
+                connection.start(false);
             }
+        } catch (IOException ignored) {
+
+        }
+    }
+
+    private Connection connect(SocketAddress address) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean connected = channel.connect(address);
+            Connection connection = new Connection(channel, address, nextLoop(), node, this, protocol, maxPendingBytes);
+            connections.put(address, connection);
+            connection.start(!connected);
+            return connection;
+        } catch (IOException e) {
+            return null;
         }
     }
 
+    public boolean isConnected(SocketAddress address) {
+        Connection connection = connections.get(address);
+        return connection != null && connection.isActive();
+    }
+
+    public boolean isWritable(SocketAddress address) {
+        Connection connection = connections.get(address);
+        return connection != null && connection.isActive() && connection.isWritable();
+    }
+
+    void remove(Connection connection) {
+        connections.remove(connection.getAddress(), connection);
+    }
+
+    private synchronized EventLoop nextLoop() {
+        EventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        return loop;
+    }
+
     private class ConnectionWriter extends Thread {
         @Override
         public void run() {
@@ -70,38 +114,41 @@ public class ConnectionFactory {
                 Message message;
 
                 try {
-                    message = server.get();
+                    message = node.get();
                 } catch (InterruptedException e) {
                     close();
                     return;
                 }
 
-                synchronized (connections) {
-                    SocketAddress address = message.getAddress();
+                SocketAddress address = message.getAddress();
+                Connection connection = connections.get(address);
 
-                    if (!connections.containsKey(address) || !connections.get(address).isActive()) {
-                        Socket socket = new Socket();
-
-                        try {
-                            socket.connect(address, timeout);
-                            Connection connection = new Connection(socket, server);
-                            connections.put(address, connection);
-                            connection.start();
-                        } catch (IOException ignored) {
-
-                        }
-                    }
+                if (connection == null || !connection.isActive()) {
+                    connection = connect(address);
+                }
 
-                    if (connections.get(address) != null) {
-                        connections.get(address).send(message);
-                    }
+                if (connection != null) {
+                    connection.send(message);
                 }
             }
         }
     }
 
     public void start() {
-        reader.start();
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+
+        loops[0].execute(() -> {
+            try {
+                loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, this::accept);
+            } catch (IOException e) {
+                synchronized (System.out) {
+                    System.out.println("Can't accept connections: " + e.getMessage());
+                }
+            }
+        });
+
         writer.start();
     }
 
@@ -109,7 +156,7 @@ public class ConnectionFactory {
         active = false;
 
         try {
-            serverSocket.close();
+            serverChannel.close();
         } catch (IOException e) {
             synchronized (System.out) {
                 System.out.println("Can't close server socket: " + e.getMessage());
@@ -117,9 +164,10 @@ public class ConnectionFactory {
         }
 
         writer.interrupt();
+        connections.values().forEach(Connection::close);
 
-        synchronized (connections) {
-            connections.values().forEach(com.katsman.dkvs.server.utils.Connection::close);
+        for (EventLoop loop : loops) {
+            loop.close();
         }
     }
 }
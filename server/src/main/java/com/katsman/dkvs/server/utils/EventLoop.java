@@ -0,0 +1,112 @@
+package com.katsman.dkvs.server.utils;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class EventLoop extends Thread {
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+
+    private volatile boolean active;
+
+    public EventLoop(String name) throws IOException {
+        super(name);
+        selector = Selector.open();
+        tasks = new ConcurrentLinkedQueue<>();
+        active = true;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+        return channel.register(selector, ops, handler);
+    }
+
+    @Override
+    public void run() {
+        while (active) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                synchronized (System.out) {
+                    System.out.println("Selector failed: " + e.getMessage());
+                }
+
+                break;
+            }
+
+            Runnable task;
+
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    synchronized (System.out) {
+                        System.out.println("Task failed: " + e);
+                    }
+                }
+            }
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+
+                if (key.isValid()) {
+                    try {
+                        ((Handler) key.attachment()).handle(key);
+                    } catch (RuntimeException e) {
+                        synchronized (System.out) {
+                            System.out.println("Handler failed: " + e);
+                        }
+
+                        key.cancel();
+
+                        try {
+                            key.channel().close();
+                        } catch (IOException ignored) {
+
+                        }
+                    }
+                }
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+
+    public void close() {
+        active = false;
+        selector.wakeup();
+    }
+
+    public interface Handler {
+        void handle(SelectionKey key);
+    }
+}
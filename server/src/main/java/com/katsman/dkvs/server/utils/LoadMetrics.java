@@ -0,0 +1,104 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.Arrays;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class LoadMetrics {
+    private static final long WINDOW = 1000;
+
+    private int[] slotOps;
+    private int[] lastSlotOps;
+    private long windowStart;
+    private long ops;
+    private long bytes;
+    private long applied;
+    private long applyNanos;
+
+    private volatile double opsRate;
+    private volatile double bytesRate;
+    private volatile double applyLatency;
+
+    public LoadMetrics(long time) {
+        slotOps = new int[ShardMap.SLOTS];
+        lastSlotOps = new int[ShardMap.SLOTS];
+        windowStart = time;
+    }
+
+    public synchronized void record(String key, int size) {
+        slotOps[ShardMap.getSlot(key)]++;
+        ops++;
+        bytes += size;
+    }
+
+    public synchronized void recordApply(int entries, long nanos) {
+        applied += entries;
+        applyNanos += nanos;
+    }
+
+    public synchronized void roll(long time) {
+        long elapsed = time - windowStart;
+
+        if (elapsed < WINDOW) {
+            return;
+        }
+
+        opsRate = (opsRate + ops * 1000.0 / elapsed) / 2;
+        bytesRate = (bytesRate + bytes * 1000.0 / elapsed) / 2;
+        applyLatency = applied == 0 ? applyLatency / 2 : (applyLatency + applyNanos / 1000.0 / applied) / 2;
+
+        int[] slots = lastSlotOps;
+        lastSlotOps = slotOps;
+        slotOps = slots;
+        Arrays.fill(slotOps, 0);
+        windowStart = time;
+        ops = 0;
+        bytes = 0;
+        applied = 0;
+        applyNanos = 0;
+    }
+
+    public double getOpsRate() {
+        return opsRate;
+    }
+
+    public double getBytesRate() {
+        return bytesRate;
+    }
+
+    public double getApplyLatency() {
+        return applyLatency;
+    }
+
+    public synchronized int getSplitSlot(ShardState shards) {
+        long total = 0;
+
+        for (int slot = shards.next(0); slot >= 0; slot = shards.next(slot + 1)) {
+            total += lastSlotOps[slot];
+        }
+
+        if (total == 0) {
+            return -1;
+        }
+
+        long sum = 0;
+
+        for (int slot = shards.next(0); slot >= 0; slot = shards.next(slot + 1)) {
+            sum += lastSlotOps[slot];
+
+            if (sum * 2 >= total) {
+                return slot == shards.next(0) ? shards.next(slot + 1) : slot;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ops = %.1f/s; bytes = %.1f/s; apply latency = %.1fus", opsRate, bytesRate, applyLatency);
+    }
+}
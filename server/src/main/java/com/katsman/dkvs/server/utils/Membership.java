@@ -0,0 +1,210 @@
+package com.katsman.dkvs.server.utils;
+
+import com.katsman.dkvs.common.messages.Entry;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.Operation;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class Membership {
+    private static final String VOTER = "voter";
+    private static final String LEARNER = "learner";
+    private static final String STAGING = "staging";
+
+    private final int index;
+    private final SortedMap<Integer, InetSocketAddress> members;
+    private final Set<Integer> voters;
+    private final Set<Integer> staging;
+
+    private Membership(int index, SortedMap<Integer, InetSocketAddress> members, Set<Integer> voters, Set<Integer> staging) {
+        this.index = index;
+        this.members = Collections.unmodifiableSortedMap(members);
+        this.voters = Collections.unmodifiableSet(voters);
+        this.staging = Collections.unmodifiableSet(staging);
+    }
+
+    public static Membership bootstrap(Configuration configuration, int group) {
+        SortedMap<Integer, InetSocketAddress> members = new TreeMap<>();
+
+        for (int i = 0; i < configuration.getReplicas(); i++) {
+            int id = (group + i) % configuration.getServersCount();
+            members.put(id, configuration.getAddress(id));
+        }
+
+        return new Membership(-1, members, new TreeSet<>(members.keySet()), new TreeSet<>());
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Set<Integer> getMembers() {
+        return members.keySet();
+    }
+
+    public Set<Integer> getVoters() {
+        return voters;
+    }
+
+    public boolean contains(int id) {
+        return members.containsKey(id);
+    }
+
+    public boolean isVoter(int id) {
+        return voters.contains(id);
+    }
+
+    public boolean isLearner(int id) {
+        return contains(id) && !isVoter(id);
+    }
+
+    public boolean isStaging(int id) {
+        return staging.contains(id);
+    }
+
+    public int getQuorum() {
+        return voters.size() / 2 + 1;
+    }
+
+    public InetSocketAddress getAddress(int id) {
+        return members.get(id);
+    }
+
+    public Membership withLearner(int index, int id, InetSocketAddress address, boolean staging) {
+        SortedMap<Integer, InetSocketAddress> members = new TreeMap<>(this.members);
+        Set<Integer> stagingMembers = new TreeSet<>(this.staging);
+        members.put(id, address);
+
+        if (staging) {
+            stagingMembers.add(id);
+        }
+
+        return new Membership(index, members, new TreeSet<>(voters), stagingMembers);
+    }
+
+    public Membership withVoter(int index, int id) {
+        Set<Integer> voters = new TreeSet<>(this.voters);
+        Set<Integer> staging = new TreeSet<>(this.staging);
+        voters.add(id);
+        staging.remove(id);
+        return new Membership(index, new TreeMap<>(members), voters, staging);
+    }
+
+    public Membership without(int index, int id) {
+        SortedMap<Integer, InetSocketAddress> members = new TreeMap<>(this.members);
+        Set<Integer> voters = new TreeSet<>(this.voters);
+        Set<Integer> staging = new TreeSet<>(this.staging);
+        members.remove(id);
+        voters.remove(id);
+        staging.remove(id);
+        return new Membership(index, members, voters, staging);
+    }
+
+    public Entry toEntry(int term) {
+        List<String> addresses = new ArrayList<>(members.size());
+        List<String> roles = new ArrayList<>(members.size());
+        long[] ids = new long[members.size()];
+        int i = 0;
+
+        for (Map.Entry<Integer, InetSocketAddress> member : members.entrySet()) {
+            addresses.add(member.getValue().getHostString() + ":" + member.getValue().getPort());
+            roles.add(getRole(member.getKey()));
+            ids[i++] = member.getKey();
+        }
+
+        return new Entry(term, Operation.CONFIG, addresses, roles, ids);
+    }
+
+    public static Membership fromEntry(int index, Entry entry) {
+        SortedMap<Integer, InetSocketAddress> members = new TreeMap<>();
+        Set<Integer> voters = new TreeSet<>();
+        Set<Integer> staging = new TreeSet<>();
+
+        for (int i = 0; i < entry.getKeys().size(); i++) {
+            int id = (int) entry.getDeltas()[i];
+            members.put(id, parseAddress(entry.getKeys().get(i)));
+
+            if (VOTER.equals(entry.getValues().get(i))) {
+                voters.add(id);
+            } else if (STAGING.equals(entry.getValues().get(i))) {
+                staging.add(id);
+            }
+        }
+
+        return new Membership(index, members, voters, staging);
+    }
+
+    public static InetSocketAddress parseAddress(String address) {
+        int pos = address == null ? -1 : address.lastIndexOf(':');
+
+        if (pos <= 0) {
+            return null;
+        }
+
+        try {
+            return new InetSocketAddress(address.substring(0, pos), Integer.parseInt(address.substring(pos + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static Membership read(BinaryInput in) {
+        int index = in.readSignedVarInt();
+        int count = in.readVarInt();
+        SortedMap<Integer, InetSocketAddress> members = new TreeMap<>();
+        Set<Integer> voters = new TreeSet<>();
+        Set<Integer> staging = new TreeSet<>();
+
+        for (int i = 0; i < count; i++) {
+            int id = in.readVarInt();
+            members.put(id, in.readAddress());
+            String role = in.readString();
+
+            if (VOTER.equals(role)) {
+                voters.add(id);
+            } else if (STAGING.equals(role)) {
+                staging.add(id);
+            }
+        }
+
+        return new Membership(index, members, voters, staging);
+    }
+
+    public void write(BinaryOutput out) {
+        out.writeSignedVarInt(index);
+        out.writeVarInt(members.size());
+
+        for (Map.Entry<Integer, InetSocketAddress> member : members.entrySet()) {
+            out.writeVarInt(member.getKey());
+            out.writeAddress(member.getValue());
+            out.writeString(getRole(member.getKey()));
+        }
+    }
+
+    private String getRole(int id) {
+        return isVoter(id) ? VOTER : (isStaging(id) ? STAGING : LEARNER);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<Integer, InetSocketAddress> member : members.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+
+            sb.append(member.getKey() + 1);
+            sb.append(isVoter(member.getKey()) ? "" : "(" + getRole(member.getKey()) + ")");
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class MpscQueue<T> {
+    private final AtomicReference<Node<T>> tail;
+    private final AtomicBoolean parked;
+
+    private Node<T> head;
+
+    private volatile Thread consumer;
+
+    public MpscQueue() {
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+        parked = new AtomicBoolean();
+    }
+
+    public void add(T value) {
+        Node<T> node = new Node<>(value);
+        tail.getAndSet(node).next = node;
+
+        if (parked.get() && parked.compareAndSet(true, false)) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public T poll() {
+        Node<T> next = head.next;
+
+        if (next == null) {
+            return null;
+        }
+
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head == tail.get();
+    }
+
+    public void signal() {
+        Thread thread = consumer;
+
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void await() throws InterruptedException {
+        await(Long.MAX_VALUE);
+    }
+
+    public void await(long nanos) throws InterruptedException {
+        consumer = Thread.currentThread();
+        parked.set(true);
+
+        if (isEmpty()) {
+            LockSupport.parkNanos(this, nanos);
+        }
+
+        parked.set(false);
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private static class Node<T> {
+        T value;
+
+        volatile Node<T> next;
+
+        Node(T value) {
+            this.value = value;
+        }
+    }
+}
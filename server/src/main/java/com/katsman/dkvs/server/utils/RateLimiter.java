@@ -0,0 +1,38 @@
+package com.katsman.dkvs.server.utils;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class RateLimiter {
+    private final long rate;
+    private final long burst;
+
+    private double tokens;
+    private long time;
+
+    public RateLimiter(long rate, long burst) {
+        this.rate = rate;
+        this.burst = burst;
+        tokens = burst;
+        time = System.nanoTime();
+    }
+
+    public boolean tryAcquire(long amount) {
+        if (rate <= 0) {
+            return true;
+        }
+
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - time) * rate / 1e9);
+        time = now;
+
+        if (tokens < amount) {
+            return false;
+        }
+
+        tokens -= amount;
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class RingBuffer<T> {
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+
+    public RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Object[size];
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+    }
+
+    public boolean offer(T value) {
+        long position = tail.get();
+
+        if (position - head.get() == slots.length) {
+            return false;
+        }
+
+        slots[(int) position & mask] = value;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = head.get();
+
+        if (position == tail.get()) {
+            return null;
+        }
+
+        int slot = (int) position & mask;
+        T value = (T) slots[slot];
+        slots[slot] = null;
+        head.lazySet(position + 1);
+        return value;
+    }
+
+    public boolean isFull() {
+        return tail.get() - head.get() == slots.length;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,600 @@
+package com.katsman.dkvs.server.utils;
+
+import com.katsman.dkvs.common.messages.Entry;
+import com.katsman.dkvs.common.messages.Message;
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.ParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class SegmentedLog {
+    private static final int HEADER_SIZE = 12;
+    private static final int INDEX_INTERVAL = 64;
+    private static final String SEGMENT_PREFIX = "segment_";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int QUEUE_SIZE = 64;
+
+    private final Path directory;
+    private final long segmentSize;
+    private final int cacheEntries;
+    private final NavigableMap<Integer, Segment> segments;
+    private final BinaryOutput pending;
+    private final BinaryOutput record;
+    private final CRC32 crc;
+    private final FileChannel commitChannel;
+    private final RingBuffer<Batch> queue;
+    private final ArrayDeque<Batch> backlog;
+    private final Writer writer;
+
+    private int firstIndex;
+    private int size;
+    private int pendingStart;
+    private Message[] cache;
+    private int cacheHead;
+    private int cacheCount;
+    private int cacheStart;
+    private int commitIndex;
+    private boolean commitDirty;
+    private List<Runnable> callbacks;
+    private int submitted;
+    private int truncations;
+    private int truncatedSize;
+
+    private volatile int syncedSize;
+    private volatile int completed;
+    private volatile int truncated;
+    private volatile IOException failure;
+
+    private Segment cursorSegment;
+    private int cursorIndex;
+    private int cursorOffset;
+
+    public SegmentedLog(String directory, long segmentSize, int cacheEntries) throws IOException {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.cacheEntries = cacheEntries;
+        segments = new ConcurrentSkipListMap<>();
+        cache = new Message[Integer.highestOneBit(Math.max(1, cacheEntries)) << 1];
+        pending = new BinaryOutput(64 * 1024);
+        record = new BinaryOutput(1024);
+        crc = new CRC32();
+        Files.createDirectories(this.directory);
+        commitChannel = FileChannel.open(this.directory.resolve("commit"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        cursorIndex = -1;
+        callbacks = new ArrayList<>();
+        queue = new RingBuffer<>(QUEUE_SIZE);
+        backlog = new ArrayDeque<>();
+        truncatedSize = Integer.MAX_VALUE;
+        writer = new Writer(this.directory.getFileName() + "_writer");
+        writer.start();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    public int getSyncedSize() {
+        if (truncated == truncations) {
+            truncatedSize = Integer.MAX_VALUE;
+        }
+
+        return Math.min(syncedSize, truncatedSize);
+    }
+
+    public int getCommitIndex() {
+        return commitIndex;
+    }
+
+    public void setCommitIndex(int commitIndex) {
+        this.commitIndex = commitIndex;
+        commitDirty = true;
+    }
+
+    public void restore(Listener listener) throws ParseException, IOException {
+        ByteBuffer commit = ByteBuffer.allocate(4);
+
+        if (commitChannel.read(commit, 0) == 4) {
+            commit.flip();
+            commitIndex = commit.getInt();
+        }
+
+        File[] files = directory.toFile().listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                int first = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(first, new Segment(first, file.toPath(), segmentSize));
+            }
+        }
+
+        if (!segments.isEmpty()) {
+            firstIndex = segments.firstKey();
+            size = firstIndex;
+        }
+
+        for (Segment segment : segments.values()) {
+            if (segment.first != size) {
+                throw new ParseException("Log segment " + segment.first + " doesn't follow index " + size + "!");
+            }
+
+            segment.scan(listener);
+            size += segment.count;
+        }
+
+        syncedSize = size;
+        pendingStart = size;
+        cacheStart = size;
+        commitIndex = Math.min(commitIndex, size);
+    }
+
+    public void append(Entry entry) {
+        record.clear();
+        entry.write(record);
+        ByteBuffer payload = record.toBuffer();
+        crc.reset();
+        crc.update(payload.duplicate());
+        pending.writeInt(payload.remaining());
+        pending.writeInt(entry.getTerm());
+        pending.writeInt((int) crc.getValue());
+        pending.writeBuffer(payload);
+
+        if (cacheCount == cache.length) {
+            Message[] entries = new Message[cache.length << 1];
+
+            for (int i = 0; i < cacheCount; i++) {
+                entries[i] = cache[(cacheHead + i) & (cache.length - 1)];
+            }
+
+            cache = entries;
+            cacheHead = 0;
+        }
+
+        cache[(cacheHead + cacheCount++) & (cache.length - 1)] = entry;
+        size++;
+    }
+
+    public Message get(int index) {
+        if (index < firstIndex || index >= size) {
+            throw new IndexOutOfBoundsException("Log index " + index + " is out of [" + firstIndex + ", " + size + ")");
+        }
+
+        if (index >= cacheStart) {
+            return cache[(cacheHead + index - cacheStart) & (cache.length - 1)];
+        }
+
+        Segment segment = segments.floorEntry(index).getValue();
+        int offset;
+
+        if (cursorSegment == segment && cursorIndex != -1 && cursorIndex <= index && index - cursorIndex < INDEX_INTERVAL) {
+            offset = segment.skip(cursorOffset, index - cursorIndex);
+        } else {
+            int relative = index - segment.first;
+            offset = segment.skip(segment.offsets[relative / INDEX_INTERVAL], relative % INDEX_INTERVAL);
+        }
+
+        Message message = segment.read(offset);
+        cursorSegment = segment;
+        cursorIndex = index + 1;
+        cursorOffset = offset + HEADER_SIZE + segment.buffer.getInt(offset);
+        return message;
+    }
+
+    public void truncate(int newSize) throws IOException {
+        if (newSize >= size) {
+            return;
+        }
+
+        while (cacheCount > 0 && cacheStart + cacheCount > newSize) {
+            cache[(cacheHead + --cacheCount) & (cache.length - 1)] = null;
+        }
+
+        cacheStart = Math.min(cacheStart, newSize);
+        cursorIndex = -1;
+        submit(newSize, false);
+        size = newSize;
+    }
+
+    public void compact(int index) throws IOException {
+        if (truncated != truncations) {
+            return;
+        }
+
+        while (segments.size() > 1 && segments.higherKey(segments.firstKey()) <= index) {
+            Segment segment = segments.pollFirstEntry().getValue();
+
+            if (cursorSegment == segment) {
+                cursorSegment = null;
+                cursorIndex = -1;
+            }
+
+            segment.delete();
+        }
+
+        firstIndex = segments.isEmpty() ? firstIndex : segments.firstKey();
+    }
+
+    public void reset(int index) throws IOException {
+        Arrays.fill(cache, null);
+        cacheHead = 0;
+        cacheCount = 0;
+        cursorSegment = null;
+        cursorIndex = -1;
+        submit(index, true);
+        firstIndex = index;
+        size = index;
+        cacheStart = index;
+    }
+
+    public boolean hasPending() {
+        return pending.size() > 0 || commitDirty;
+    }
+
+    public boolean isSynced() {
+        return !hasPending() && callbacks.isEmpty() && completed == submitted;
+    }
+
+    public void sync(Runnable callback) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+
+        if (callback != null && !callbacks.contains(callback)) {
+            callbacks.add(callback);
+        }
+
+        while (!backlog.isEmpty() && queue.offer(backlog.peek())) {
+            backlog.poll();
+            LockSupport.unpark(writer);
+        }
+
+        if ((hasPending() || !callbacks.isEmpty()) && backlog.isEmpty() && !queue.isFull()) {
+            submit();
+        }
+
+        int synced = getSyncedSize();
+
+        while (cacheCount > cacheEntries && cacheStart < synced) {
+            cache[cacheHead] = null;
+            cacheHead = (cacheHead + 1) & (cache.length - 1);
+            cacheCount--;
+            cacheStart++;
+        }
+    }
+
+    public void close() throws IOException {
+        if (hasPending() || !callbacks.isEmpty()) {
+            submit();
+        }
+
+        writer.close();
+        Batch batch;
+
+        while (failure == null && ((batch = queue.poll()) != null || (batch = backlog.poll()) != null)) {
+            write(batch);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        commitChannel.force(false);
+        commitChannel.close();
+
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private void submit() {
+        ByteBuffer records = ByteBuffer.allocate(pending.size());
+        records.put(pending.toBuffer());
+        records.flip();
+        submit(new Batch(pendingStart, records, commitDirty ? commitIndex : -1, callbacks, -1, false));
+        pending.clear();
+        pendingStart = size;
+        commitDirty = false;
+        callbacks = new ArrayList<>();
+    }
+
+    private void submit(int newSize, boolean reset) {
+        if (hasPending() || !callbacks.isEmpty()) {
+            submit();
+        }
+
+        submit(new Batch(newSize, ByteBuffer.allocate(0), -1, new ArrayList<>(), newSize, reset));
+        pendingStart = newSize;
+        truncatedSize = Math.min(truncatedSize, newSize);
+        truncations++;
+    }
+
+    private void submit(Batch batch) {
+        submitted++;
+
+        if (backlog.isEmpty() && queue.offer(batch)) {
+            LockSupport.unpark(writer);
+        } else {
+            backlog.add(batch);
+        }
+    }
+
+    private void write(Batch batch) throws IOException {
+        if (batch.reset) {
+            for (Segment segment : segments.values()) {
+                segment.delete();
+            }
+
+            segments.clear();
+            syncedSize = batch.truncate;
+        } else if (batch.truncate != -1) {
+            while (!segments.isEmpty() && segments.lastKey() > batch.truncate) {
+                segments.pollLastEntry().getValue().delete();
+            }
+
+            if (!segments.isEmpty()) {
+                segments.lastEntry().getValue().truncate(batch.truncate);
+                segments.lastEntry().getValue().force();
+            }
+
+            syncedSize = Math.min(syncedSize, batch.truncate);
+        }
+
+        if (batch.records.hasRemaining()) {
+            ByteBuffer buffer = batch.records;
+            int index = batch.first;
+
+            while (buffer.hasRemaining()) {
+                Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+                int length = buffer.getInt(buffer.position());
+
+                if (segment == null || !segment.fits(HEADER_SIZE + length)) {
+                    if (segment != null) {
+                        segment.force();
+                    }
+
+                    Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+                    segment = new Segment(index, path, Math.max(segmentSize, HEADER_SIZE + length + 4));
+                    segments.put(index, segment);
+                }
+
+                int end = buffer.position();
+
+                while (end < buffer.limit() && segment.fits(end - buffer.position() + HEADER_SIZE + buffer.getInt(end))) {
+                    end += HEADER_SIZE + buffer.getInt(end);
+                    index++;
+                }
+
+                ByteBuffer slice = buffer.slice();
+                slice.limit(end - buffer.position());
+                segment.write(slice);
+                buffer.position(end);
+            }
+
+            if (!segments.isEmpty()) {
+                segments.lastEntry().getValue().force();
+            }
+
+            syncedSize = index;
+        }
+
+        if (batch.commitIndex != -1) {
+            ByteBuffer commit = ByteBuffer.allocate(4);
+            commit.putInt(0, batch.commitIndex);
+            commitChannel.write(commit, 0);
+        }
+
+        if (batch.truncate != -1) {
+            truncated++;
+        }
+
+        batch.callbacks.forEach(Runnable::run);
+    }
+
+    private class Segment {
+        final int first;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        int count;
+        int position;
+        int[] offsets;
+
+        Segment(int first, Path path, long capacity) throws IOException {
+            this.first = first;
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            if (channel.size() < capacity) {
+                channel.write(ByteBuffer.allocate(1), capacity - 1);
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            offsets = new int[16];
+        }
+
+        void scan(Listener listener) throws IOException {
+            int offset = 0;
+
+            while (offset + HEADER_SIZE <= buffer.capacity()) {
+                int length = buffer.getInt(offset);
+
+                if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+                    break;
+                }
+
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(offset + HEADER_SIZE);
+                payload.limit(offset + HEADER_SIZE + length);
+                crc.reset();
+                crc.update(payload);
+
+                if ((int) crc.getValue() != buffer.getInt(offset + 8)) {
+                    break;
+                }
+
+                listener.onEntry(first + count, buffer.getInt(offset + 4));
+                index(offset);
+                offset += HEADER_SIZE + length;
+            }
+
+            position = offset;
+
+            if (offset + 4 <= buffer.capacity() && buffer.getInt(offset) != 0) {
+                channel.write(ByteBuffer.allocate(4), offset);
+                channel.force(false);
+            }
+        }
+
+        boolean fits(int length) {
+            return position + length + 4 <= buffer.capacity();
+        }
+
+        void write(ByteBuffer records) throws IOException {
+            for (int offset = 0; offset < records.limit(); offset += HEADER_SIZE + records.getInt(offset)) {
+                index(position + offset);
+            }
+
+            while (records.hasRemaining()) {
+                position += channel.write(records, position);
+            }
+
+            channel.write(ByteBuffer.allocate(4), position);
+        }
+
+        void truncate(int newSize) throws IOException {
+            int relative = newSize - first;
+            int offset = skip(offsets[relative / INDEX_INTERVAL], relative % INDEX_INTERVAL);
+            channel.write(ByteBuffer.allocate(4), offset);
+            position = offset;
+            count = relative;
+        }
+
+        int skip(int offset, int entries) {
+            for (int i = 0; i < entries; i++) {
+                offset += HEADER_SIZE + buffer.getInt(offset);
+            }
+
+            return offset;
+        }
+
+        Message read(int offset) {
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(offset + HEADER_SIZE);
+            payload.limit(offset + HEADER_SIZE + buffer.getInt(offset));
+            return Message.read(new BinaryInput(payload));
+        }
+
+        void force() throws IOException {
+            channel.force(false);
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+
+        private void index(int offset) {
+            if (count % INDEX_INTERVAL == 0) {
+                int slot = count / INDEX_INTERVAL;
+
+                if (slot == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+
+                offsets[slot] = offset;
+            }
+
+            count++;
+        }
+    }
+
+    private static class Batch {
+        final int first;
+        final ByteBuffer records;
+        final int commitIndex;
+        final List<Runnable> callbacks;
+        final int truncate;
+        final boolean reset;
+
+        Batch(int first, ByteBuffer records, int commitIndex, List<Runnable> callbacks, int truncate, boolean reset) {
+            this.first = first;
+            this.records = records;
+            this.commitIndex = commitIndex;
+            this.callbacks = callbacks;
+            this.truncate = truncate;
+            this.reset = reset;
+        }
+    }
+
+    private class Writer extends Thread {
+        private volatile boolean active;
+
+        Writer(String name) {
+            super(name);
+            setDaemon(true);
+            active = true;
+        }
+
+        @Override
+        public void run() {
+            while (failure == null) {
+                Batch batch = queue.poll();
+
+                if (batch == null) {
+                    if (!active) {
+                        return;
+                    }
+
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    failure = e;
+                }
+
+                completed++;
+            }
+        }
+
+        void close() {
+            active = false;
+            LockSupport.unpark(this);
+
+            try {
+                join();
+            } catch (InterruptedException ignored) {
+
+            }
+        }
+    }
+
+    public interface Listener {
+        void onEntry(int index, int term);
+    }
+}
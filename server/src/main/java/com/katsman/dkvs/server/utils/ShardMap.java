@@ -0,0 +1,59 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ShardMap {
+    public static final int SLOTS = 1024;
+
+    private final AtomicIntegerArray owners;
+
+    public ShardMap(int groups) {
+        owners = new AtomicIntegerArray(SLOTS);
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            owners.set(slot, getDefaultGroup(slot, groups));
+        }
+    }
+
+    public int getGroup(String key) {
+        return owners.get(getSlot(key));
+    }
+
+    public int getGroupOfSlot(int slot) {
+        return owners.get(slot);
+    }
+
+    public void assign(int from, int to, int group) {
+        for (int slot = from; slot < to; slot++) {
+            owners.set(slot, group);
+        }
+    }
+
+    public static int getDefaultGroup(int slot, int groups) {
+        return (int) ((long) slot * groups / SLOTS);
+    }
+
+    public static int getSlot(String key) {
+        if (key == null) {
+            return 0;
+        }
+
+        String tag = getHashTag(key);
+        return ((tag == null ? key : tag).hashCode() & Integer.MAX_VALUE) % SLOTS;
+    }
+
+    public static String getHashTag(String key) {
+        if (key == null) {
+            return null;
+        }
+
+        int start = key.indexOf('{');
+        int end = start == -1 ? -1 : key.indexOf('}', start + 1);
+        return end > start + 1 ? key.substring(start + 1, end) : null;
+    }
+}
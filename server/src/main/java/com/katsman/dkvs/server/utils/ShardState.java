@@ -0,0 +1,177 @@
+package com.katsman.dkvs.server.utils;
+
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+
+import java.util.BitSet;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ShardState {
+    private final BitSet owned;
+
+    private int from;
+    private int to;
+    private int target;
+    private boolean released;
+
+    public ShardState(int group, int groups) {
+        owned = new BitSet(ShardMap.SLOTS);
+
+        for (int slot = 0; slot < ShardMap.SLOTS; slot++) {
+            if (ShardMap.getDefaultGroup(slot, groups) == group) {
+                owned.set(slot);
+            }
+        }
+
+        from = -1;
+    }
+
+    private ShardState(BitSet owned, int from, int to, int target, boolean released) {
+        this.owned = owned;
+        this.from = from;
+        this.to = to;
+        this.target = target;
+        this.released = released;
+    }
+
+    public boolean owns(int slot) {
+        return owned.get(slot);
+    }
+
+    public boolean owns(int from, int to) {
+        return from < to && owned.nextClearBit(from) >= to;
+    }
+
+    public int count() {
+        return owned.cardinality();
+    }
+
+    public int next(int slot) {
+        return slot >= ShardMap.SLOTS ? -1 : owned.nextSetBit(slot);
+    }
+
+    public int getRunEnd(int slot) {
+        return Math.min(owned.nextClearBit(slot), ShardMap.SLOTS);
+    }
+
+    public boolean hasMigration() {
+        return from != -1;
+    }
+
+    public boolean isMigrating(int slot) {
+        return slot >= from && slot < to;
+    }
+
+    public boolean isMigration(int from, int to, int target) {
+        return this.from == from && this.to == to && this.target == target;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    public void migrate(int from, int to, int target) {
+        this.from = from;
+        this.to = to;
+        this.target = target;
+        released = false;
+    }
+
+    public void release() {
+        owned.clear(from, to);
+        released = true;
+    }
+
+    public void adopt(int from, int to) {
+        owned.set(from, to);
+    }
+
+    public void finish() {
+        from = -1;
+        to = 0;
+        target = 0;
+        released = false;
+    }
+
+    public ShardState copy() {
+        return new ShardState((BitSet) owned.clone(), from, to, target, released);
+    }
+
+    public static ShardState read(BinaryInput in) {
+        BitSet owned = new BitSet(ShardMap.SLOTS);
+        int ranges = in.readVarInt();
+
+        for (int i = 0; i < ranges; i++) {
+            int start = in.readVarInt();
+            owned.set(start, start + in.readVarInt());
+        }
+
+        int from = in.readSignedVarInt();
+        int to = in.readVarInt();
+        int target = in.readVarInt();
+        boolean released = in.readBoolean();
+        return new ShardState(owned, from, to, target, released);
+    }
+
+    public void write(BinaryOutput out) {
+        int ranges = 0;
+
+        for (int slot = owned.nextSetBit(0); slot >= 0; slot = owned.nextSetBit(owned.nextClearBit(slot))) {
+            ranges++;
+        }
+
+        out.writeVarInt(ranges);
+
+        for (int slot = owned.nextSetBit(0); slot >= 0; slot = owned.nextSetBit(owned.nextClearBit(slot))) {
+            out.writeVarInt(slot);
+            out.writeVarInt(owned.nextClearBit(slot) - slot);
+        }
+
+        out.writeSignedVarInt(from);
+        out.writeVarInt(to);
+        out.writeVarInt(target);
+        out.writeBoolean(released);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+
+        for (int slot = owned.nextSetBit(0); slot >= 0; slot = owned.nextSetBit(owned.nextClearBit(slot))) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+
+            sb.append(slot);
+            sb.append("-");
+            sb.append(owned.nextClearBit(slot) - 1);
+        }
+
+        if (hasMigration()) {
+            sb.append(released ? " releasing " : " migrating ");
+            sb.append(from);
+            sb.append("-");
+            sb.append(to - 1);
+            sb.append(" to ");
+            sb.append(target);
+        }
+
+        return sb.toString();
+    }
+}
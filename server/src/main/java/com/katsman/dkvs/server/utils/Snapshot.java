@@ -0,0 +1,203 @@
+package com.katsman.dkvs.server.utils;
+
+import com.katsman.dkvs.common.utils.BinaryInput;
+import com.katsman.dkvs.common.utils.BinaryOutput;
+import com.katsman.dkvs.common.utils.ParseException;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class Snapshot {
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    private final int index;
+    private final int term;
+    private final ShardState shards;
+    private final Membership membership;
+
+    public Snapshot(int index, int term) {
+        this(index, term, null, null);
+    }
+
+    public Snapshot(int index, int term, ShardState shards, Membership membership) {
+        this.index = index;
+        this.term = term;
+        this.shards = shards;
+        this.membership = membership;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public ShardState getShards() {
+        return shards;
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public static Snapshot read(Path path, BiConsumer<String, StoredValue> consumer) throws ParseException, IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 4) {
+                throw new ParseException("Snapshot " + path + " was corrupted!");
+            }
+
+            ByteBuffer content = buffer.duplicate();
+            content.limit(buffer.limit() - 4);
+            CRC32 crc = new CRC32();
+            crc.update(content.duplicate());
+
+            if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                throw new ParseException("Snapshot " + path + " was corrupted!");
+            }
+
+            BinaryInput in = new BinaryInput(content);
+            int index = in.readSignedVarInt();
+            int term = in.readSignedVarInt();
+
+            while (in.readBoolean()) {
+                String key = in.readString();
+
+                if (in.readBoolean()) {
+                    long number = in.readSignedVarLong();
+                    int version = in.readSignedVarInt();
+                    consumer.accept(key, new StoredValue(number, version, in.readVarLong()));
+                } else {
+                    String value = in.readString();
+                    int version = in.readSignedVarInt();
+                    consumer.accept(key, new StoredValue(value, version, in.readVarLong()));
+                }
+            }
+
+            return new Snapshot(index, term, ShardState.read(in), Membership.read(in));
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new ParseException("Snapshot " + path + " was corrupted!");
+        }
+    }
+
+    public static Snapshot readHeader(FileChannel channel) throws ParseException, IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+
+        channel.read(buffer, 0);
+        buffer.flip();
+
+        try {
+            BinaryInput in = new BinaryInput(buffer);
+            return new Snapshot(in.readSignedVarInt(), in.readSignedVarInt());
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new ParseException("Snapshot header was corrupted!");
+        }
+    }
+
+    public static void write(Path path, Snapshot snapshot, VersionedMap<StoredValue> data) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.out.writeSignedVarInt(snapshot.getIndex());
+            writer.out.writeSignedVarInt(snapshot.getTerm());
+            data.forEachInSnapshot(writer::write);
+            writer.out.writeBoolean(false);
+            snapshot.getShards().write(writer.out);
+            snapshot.getMembership().write(writer.out);
+            writer.finish();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Writer {
+        final FileChannel channel;
+        final BinaryOutput out;
+        final CRC32 crc;
+
+        IOException error;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+            out = new BinaryOutput(FLUSH_SIZE * 2);
+            crc = new CRC32();
+        }
+
+        void write(String key, StoredValue value) {
+            out.writeBoolean(true);
+            out.writeString(key);
+            out.writeBoolean(value.isNumeric());
+
+            if (value.isNumeric()) {
+                out.writeSignedVarLong(value.getNumber());
+            } else {
+                out.writeString(value.getValue());
+            }
+
+            out.writeSignedVarInt(value.getVersion());
+            out.writeVarLong(value.getDeadline());
+
+            if (out.size() >= FLUSH_SIZE) {
+                flush();
+            }
+        }
+
+        void finish() throws IOException {
+            flush();
+
+            if (error != null) {
+                throw error;
+            }
+
+            ByteBuffer checksum = ByteBuffer.allocate(4);
+            checksum.putInt(0, (int) crc.getValue());
+
+            while (checksum.hasRemaining()) {
+                channel.write(checksum);
+            }
+
+            channel.force(true);
+        }
+
+        private void flush() {
+            if (error != null) {
+                out.clear();
+                return;
+            }
+
+            ByteBuffer buffer = out.toBuffer();
+            crc.update(buffer.duplicate());
+
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            out.clear();
+        }
+    }
+}
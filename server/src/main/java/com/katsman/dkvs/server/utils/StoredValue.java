@@ -0,0 +1,58 @@
+package com.katsman.dkvs.server.utils;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class StoredValue {
+    private final String value;
+    private final long number;
+    private final boolean numeric;
+    private final int version;
+    private final long deadline;
+
+    public StoredValue(String value, int version) {
+        this(value, version, 0);
+    }
+
+    public StoredValue(String value, int version, long deadline) {
+        this.value = value;
+        this.version = version;
+        this.deadline = deadline;
+        number = 0;
+        numeric = false;
+    }
+
+    public StoredValue(long number, int version, long deadline) {
+        this.number = number;
+        this.version = version;
+        this.deadline = deadline;
+        value = null;
+        numeric = true;
+    }
+
+    public String getValue() {
+        return numeric ? Long.toString(number) : value;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean isExpiredAt(long time) {
+        return deadline != 0 && deadline <= time;
+    }
+}
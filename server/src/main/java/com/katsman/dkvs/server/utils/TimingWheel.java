@@ -0,0 +1,122 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class TimingWheel {
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private final long tick;
+    private final List<List<Timer>> slots;
+
+    private long current;
+    private int size;
+
+    public TimingWheel(long tick, long time) {
+        this.tick = tick;
+        slots = new ArrayList<>(LEVELS * SLOTS);
+
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(null);
+        }
+
+        current = time / tick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(String key, long deadline) {
+        schedule(new Timer(key, deadline), current + 1);
+        size++;
+    }
+
+    public void clear() {
+        for (int i = 0; i < slots.size(); i++) {
+            slots.set(i, null);
+        }
+
+        size = 0;
+    }
+
+    public void advance(long time, BiConsumer<String, Long> consumer) {
+        long target = time / tick;
+
+        if (size == 0) {
+            current = Math.max(current, target);
+            return;
+        }
+
+        while (current < target) {
+            current++;
+
+            for (int level = 1; level < LEVELS && ((current >>> (BITS * (level - 1))) & MASK) == 0; level++) {
+                List<Timer> timers = take(level, (int) ((current >>> (BITS * level)) & MASK));
+
+                if (timers != null) {
+                    for (Timer timer : timers) {
+                        schedule(timer, current);
+                    }
+                }
+            }
+
+            List<Timer> expired = take(0, (int) (current & MASK));
+
+            if (expired != null) {
+                size -= expired.size();
+
+                for (Timer timer : expired) {
+                    consumer.accept(timer.key, timer.deadline);
+                }
+            }
+
+            if (size == 0) {
+                current = target;
+            }
+        }
+    }
+
+    private void schedule(Timer timer, long earliest) {
+        long at = Math.max(timer.deadline / tick, earliest);
+        long delta = at - current;
+        int level = 0;
+
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+
+        int slot = level * SLOTS + (int) ((at >>> (BITS * level)) & MASK);
+        List<Timer> timers = slots.get(slot);
+
+        if (timers == null) {
+            timers = new ArrayList<>();
+            slots.set(slot, timers);
+        }
+
+        timers.add(timer);
+    }
+
+    private List<Timer> take(int level, int index) {
+        return slots.set(level * SLOTS + index, null);
+    }
+
+    private static class Timer {
+        final String key;
+        final long deadline;
+
+        Timer(String key, long deadline) {
+            this.key = key;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.katsman.dkvs.server.utils;
+
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class VersionedMap<V> {
+    private static final Object ABSENT = new Object();
+
+    private final ConcurrentHashMap<String, V> data;
+    private final ConcurrentHashMap<String, Object> preimages;
+    private final ConcurrentSkipListSet<String> index;
+
+    private volatile boolean snapshotting;
+
+    public VersionedMap() {
+        data = new ConcurrentHashMap<>();
+        preimages = new ConcurrentHashMap<>();
+        index = new ConcurrentSkipListSet<>();
+    }
+
+    public V get(String key) {
+        return data.get(key);
+    }
+
+    public boolean containsKey(String key) {
+        return data.containsKey(key);
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public void put(String key, V value) {
+        remember(key);
+
+        if (data.put(key, value) == null) {
+            index.add(key);
+        }
+    }
+
+    public V remove(String key) {
+        remember(key);
+        V value = data.remove(key);
+
+        if (value != null) {
+            index.remove(key);
+        }
+
+        return value;
+    }
+
+    public void clear() {
+        data.clear();
+        index.clear();
+    }
+
+    public NavigableSet<String> keys(String from, String to) {
+        if (from == null && to == null) {
+            return index;
+        } else if (from == null) {
+            return index.headSet(to, false);
+        } else if (to == null) {
+            return index.tailSet(from, true);
+        } else if (from.compareTo(to) >= 0) {
+            return index.subSet(from, true, from, false);
+        } else {
+            return index.subSet(from, true, to, false);
+        }
+    }
+
+    public void beginSnapshot() {
+        preimages.clear();
+        snapshotting = true;
+    }
+
+    public void endSnapshot() {
+        snapshotting = false;
+        preimages.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachInSnapshot(BiConsumer<String, V> consumer) {
+        for (Map.Entry<String, V> entry : data.entrySet()) {
+            if (!preimages.containsKey(entry.getKey())) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (Map.Entry<String, Object> entry : preimages.entrySet()) {
+            if (entry.getValue() != ABSENT) {
+                consumer.accept(entry.getKey(), (V) entry.getValue());
+            }
+        }
+    }
+
+    private void remember(String key) {
+        if (snapshotting && !preimages.containsKey(key)) {
+            V value = data.get(key);
+            preimages.put(key, value == null ? ABSENT : value);
+        }
+    }
+}
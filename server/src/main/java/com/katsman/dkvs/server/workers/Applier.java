@@ -0,0 +1,260 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.Entry;
+import com.katsman.dkvs.common.messages.Message;
+import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
+import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
+import com.katsman.dkvs.common.utils.Operation;
+import com.katsman.dkvs.server.utils.LoadMetrics;
+import com.katsman.dkvs.server.utils.RingBuffer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class Applier extends Thread {
+    private static final int QUEUE_SIZE = 1024;
+    private static final int MAX_BATCH = 1024;
+
+    private final ReplicatedStateMachine rsm;
+    private final Node node;
+    private final int group;
+    private final int scanPageSize;
+    private final LoadMetrics metrics;
+    private final Runnable onApply;
+    private final RingBuffer<Object> queue;
+    private final ArrayDeque<Object> backlog;
+    private final List<Message> outbox;
+
+    private boolean submitted;
+
+    private volatile boolean active;
+
+    public Applier(String name, ReplicatedStateMachine rsm, Node node, int group, int scanPageSize, LoadMetrics metrics, Runnable onApply) {
+        super(name + "_applier");
+        this.rsm = rsm;
+        this.node = node;
+        this.group = group;
+        this.scanPageSize = scanPageSize;
+        this.metrics = metrics;
+        this.onApply = onApply;
+        queue = new RingBuffer<>(QUEUE_SIZE);
+        backlog = new ArrayDeque<>();
+        outbox = new ArrayList<>();
+        setDaemon(true);
+        active = true;
+    }
+
+    public void apply(int first, List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Object last = backlog.peekLast();
+
+        if (last instanceof Batch && ((Batch) last).end() == first) {
+            ((Batch) last).entries.addAll(entries);
+        } else {
+            submit(new Batch(first, new ArrayList<>(entries)));
+        }
+    }
+
+    public void read(ClientServerRequest request) {
+        submit(request);
+    }
+
+    public void flush() {
+        while (!backlog.isEmpty() && queue.offer(backlog.peek())) {
+            backlog.poll();
+            submitted = true;
+        }
+
+        if (submitted) {
+            submitted = false;
+            LockSupport.unpark(this);
+        }
+    }
+
+    public void close() {
+        active = false;
+        LockSupport.unpark(this);
+
+        try {
+            join();
+        } catch (InterruptedException ignored) {
+
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean applied = false;
+
+        while (active) {
+            Object task = queue.poll();
+
+            if (task == null || outbox.size() >= MAX_BATCH) {
+                send();
+            }
+
+            if (task == null) {
+                if (applied) {
+                    applied = false;
+                    onApply.run();
+                }
+
+                LockSupport.park(this);
+            } else if (task instanceof Batch) {
+                commit((Batch) task);
+                applied = true;
+            } else {
+                answer((ClientServerRequest) task);
+            }
+        }
+
+        send();
+    }
+
+    private void submit(Object task) {
+        if (backlog.isEmpty() && queue.offer(task)) {
+            submitted = true;
+        } else {
+            backlog.add(task);
+        }
+    }
+
+    private void send() {
+        if (!outbox.isEmpty()) {
+            node.send(group, outbox);
+            outbox.clear();
+        }
+    }
+
+    private void commit(Batch batch) {
+        for (Entry entry : batch.entries) {
+            if (ReplicatedStateMachine.isWrite(entry.getOperation())) {
+                int size = entry.getSize() / Math.max(1, entry.getKeys().size());
+
+                if (entry.getKey() != null) {
+                    metrics.record(entry.getKey(), size);
+                }
+
+                for (String key : entry.getKeys()) {
+                    metrics.record(key, size);
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        outbox.addAll(rsm.apply(batch.first, batch.entries));
+        metrics.recordApply(batch.entries.size(), System.nanoTime() - start);
+        rsm.pollRejected().forEach(this::moved);
+    }
+
+    private void answer(ClientServerRequest request) {
+        long time = System.currentTimeMillis();
+
+        synchronized (rsm) {
+            if (!owns(request)) {
+                moved(request);
+                return;
+            }
+
+            if (request.getOperation() == Operation.MGET) {
+                List<String> results = new ArrayList<>(request.getKeys().size());
+                List<Boolean> successes = new ArrayList<>(request.getKeys().size());
+
+                for (String key : request.getKeys()) {
+                    String value = rsm.get(key, time);
+                    results.add(value);
+                    successes.add(rsm.containsKey(key, time));
+                    metrics.record(key, value == null ? 0 : value.length());
+                }
+
+                outbox.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, results, successes, request.getRedirections()));
+            } else if (request.getOperation() == Operation.SCAN) {
+                int page = request.getLimit() < 0 ? scanPageSize : Math.min(request.getLimit(), scanPageSize);
+                List<String> keys = rsm.scan(request.getKey(), request.getValue(), page + 1, time);
+                String cursor = null;
+
+                if (keys.size() > page) {
+                    keys = keys.subList(0, page);
+                    cursor = keys.get(page - 1) + "\0";
+                }
+
+                List<String> values = new ArrayList<>(keys.size());
+
+                for (String key : keys) {
+                    String value = rsm.get(key, time);
+                    values.add(value);
+                    metrics.record(key, value == null ? 0 : value.length());
+                }
+
+                outbox.add(new ClientServerResponse(request.getAddress(), request.getOperation(), cursor, true, -1, keys, values, Collections.emptyList(), request.getRedirections()));
+            } else {
+                String value = rsm.get(request.getKey(), time);
+                metrics.record(request.getKey(), value == null ? 0 : value.length());
+                outbox.add(new ClientServerResponse(
+                        request.getAddress(),
+                        request.getOperation(),
+                        value,
+                        rsm.containsKey(request.getKey(), time),
+                        rsm.getVersion(request.getKey(), time),
+                        request.getRedirections()
+                ));
+            }
+        }
+    }
+
+    private boolean owns(ClientServerRequest request) {
+        if (request.getKey() != null && !rsm.owns(request.getKey())) {
+            return false;
+        }
+
+        for (String key : request.getKeys()) {
+            if (!rsm.owns(key)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void moved(ClientServerRequest request) {
+        int target = node.getGroup(request);
+
+        if (target != group && target != -1) {
+            node.add(request);
+            return;
+        }
+
+        outbox.add(new ClientServerResponse(
+                request.getAddress(),
+                request.getOperation(),
+                "Shard is moving",
+                false,
+                request.getRedirections()
+        ));
+    }
+
+    private static class Batch {
+        final int first;
+        final List<Entry> entries;
+
+        Batch(int first, List<Entry> entries) {
+            this.first = first;
+            this.entries = entries;
+        }
+
+        int end() {
+            return first + entries.size();
+        }
+    }
+}
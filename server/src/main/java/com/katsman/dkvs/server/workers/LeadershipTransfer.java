@@ -0,0 +1,48 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class LeadershipTransfer {
+    private final int target;
+    private final int term;
+    private final long deadline;
+    private final ClientServerRequest request;
+
+    private boolean sent;
+
+    public LeadershipTransfer(int target, int term, long deadline, ClientServerRequest request) {
+        this.target = target;
+        this.term = term;
+        this.deadline = deadline;
+        this.request = request;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public boolean isExpired(long time) {
+        return time >= deadline;
+    }
+
+    public ClientServerRequest getRequest() {
+        return request;
+    }
+
+    public boolean isSent() {
+        return sent;
+    }
+
+    public void sent() {
+        sent = true;
+    }
+}
@@ -0,0 +1,95 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.ssp.MigrateRequest;
+import com.katsman.dkvs.server.utils.ShardState;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class MigrationTask {
+    private final int from;
+    private final int to;
+    private final int target;
+
+    private Phase phase;
+    private String cursor;
+    private MigrateRequest request;
+    private long sentTime;
+
+    public MigrationTask(int from, int to, int target) {
+        this.from = from;
+        this.to = to;
+        this.target = target;
+        phase = Phase.PURGE_TARGET;
+    }
+
+    public boolean matches(ShardState shards) {
+        return shards.isMigration(from, to, target);
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public MigrateRequest getRequest() {
+        return request;
+    }
+
+    public boolean isInflight() {
+        return request != null;
+    }
+
+    public boolean needsResend(long time, int timeout) {
+        return request != null && time - sentTime >= timeout;
+    }
+
+    public void sent(MigrateRequest request, long time) {
+        this.request = request;
+        sentTime = time;
+    }
+
+    public boolean acknowledge(int requestId) {
+        if (request == null || request.getRequestId() != requestId) {
+            return false;
+        }
+
+        request = null;
+        return true;
+    }
+
+    public enum Phase {
+        PURGE_TARGET,
+        COPY,
+        DIRTY,
+        RELEASING,
+        FINAL,
+        ADOPT,
+        PURGE_SOURCE
+    }
+}
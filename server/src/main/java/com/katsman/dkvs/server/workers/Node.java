@@ -0,0 +1,225 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.Message;
+import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
+import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
+import com.katsman.dkvs.common.messages.ssp.GroupMessage;
+import com.katsman.dkvs.common.utils.ParseException;
+import com.katsman.dkvs.server.utils.Configuration;
+import com.katsman.dkvs.server.utils.ConnectionFactory;
+import com.katsman.dkvs.server.utils.LoadMetrics;
+import com.katsman.dkvs.server.utils.Membership;
+import com.katsman.dkvs.server.utils.MpscQueue;
+import com.katsman.dkvs.server.utils.ShardMap;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class Node {
+    private final ConnectionFactory factory;
+    private final ShardMap shards;
+    private final Server[] groups;
+    private final MpscQueue<Message> responses;
+    private final SocketAddress address;
+
+    private boolean closed;
+
+    public Node(Configuration configuration) throws ParseException, IOException {
+        responses = new MpscQueue<>();
+        address = configuration.getAddress(configuration.getNodeNumber());
+        factory = new ConnectionFactory(configuration, this);
+        shards = new ShardMap(configuration.getGroups());
+        groups = new Server[configuration.getGroups()];
+
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = new Server(configuration, i, this);
+        }
+    }
+
+    public void start() {
+        factory.start();
+
+        for (Server group : groups) {
+            group.start();
+        }
+    }
+
+    public void add(Message message) {
+        if (message instanceof GroupMessage) {
+            GroupMessage groupMessage = (GroupMessage) message;
+
+            if (groupMessage.getGroup() >= 0 && groupMessage.getGroup() < groups.length) {
+                groups[groupMessage.getGroup()].add(groupMessage.getMessage());
+            }
+        } else if (message instanceof ClientServerRequest) {
+            ClientServerRequest request = (ClientServerRequest) message;
+
+            switch (request.getOperation()) {
+                case STATS:
+                    send(-1, getStats(request));
+                    break;
+                case UNWATCH:
+                case ADD_NODE:
+                case ADD_LEARNER:
+                case REMOVE_NODE:
+                case TRANSFER_LEADER:
+                    for (Server group : groups) {
+                        group.add(request);
+                    }
+
+                    break;
+                case MOVE_REPLICA:
+                    if (request.getLimit() < 0 || request.getLimit() >= groups.length) {
+                        send(-1, new ClientServerResponse(
+                                request.getAddress(),
+                                request.getOperation(),
+                                "Unknown group",
+                                false,
+                                request.getRedirections()
+                        ));
+                    } else {
+                        groups[request.getLimit()].add(request);
+                    }
+
+                    break;
+                default:
+                    int group = getGroup(request);
+
+                    if (group == -1) {
+                        send(-1, new ClientServerResponse(
+                                request.getAddress(),
+                                request.getOperation(),
+                                "Keys belong to different groups",
+                                false,
+                                request.getRedirections()
+                        ));
+                    } else {
+                        groups[group].add(request);
+                    }
+            }
+        } else {
+            groups[0].add(message);
+        }
+    }
+
+    public Message get() throws InterruptedException {
+        Message message;
+
+        while ((message = responses.poll()) == null) {
+            responses.await();
+        }
+
+        return message;
+    }
+
+    void send(int group, List<Message> messages) {
+        for (Message message : messages) {
+            if (address.equals(message.getAddress())) {
+                add(message);
+            } else {
+                responses.add(wrap(group, message));
+            }
+        }
+    }
+
+    void send(int group, Message message) {
+        responses.add(wrap(group, message));
+    }
+
+    ShardMap getShards() {
+        return shards;
+    }
+
+    LoadMetrics getMetrics(int group) {
+        return groups[group].getMetrics();
+    }
+
+    Membership getMembership(int group) {
+        return groups[group].getMembership();
+    }
+
+    SocketAddress getLeaderAddress(int group) {
+        return groups[group].getRouteAddress();
+    }
+
+    boolean isConnected(SocketAddress address) {
+        return factory.isConnected(address);
+    }
+
+    boolean isWritable(SocketAddress address) {
+        return factory.isWritable(address);
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        factory.close();
+
+        for (Server group : groups) {
+            group.interrupt();
+        }
+    }
+
+    private ClientServerResponse getStats(ClientServerRequest request) {
+        List<String> keys = new ArrayList<>(groups.length);
+        List<String> results = new ArrayList<>(groups.length);
+
+        for (int i = 0; i < groups.length; i++) {
+            keys.add(Integer.toString(i));
+            results.add((groups[i].isLeader() ? "leader" : "replica") + "; " + groups[i].getMetrics() + "; slots = " + groups[i].getShards() + "; members = " + groups[i].getMembership());
+        }
+
+        return new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, -1, keys, results, Collections.emptyList(), request.getRedirections());
+    }
+
+    private Message wrap(int group, Message message) {
+        if (groups.length == 1 || message instanceof GroupMessage || message instanceof ClientServerResponse) {
+            return message;
+        }
+
+        return new GroupMessage(group, message);
+    }
+
+    int getGroup(ClientServerRequest request) {
+        switch (request.getOperation()) {
+            case MSET:
+            case MGET:
+            case MDELETE:
+                int group = 0;
+
+                for (int i = 0; i < request.getKeys().size(); i++) {
+                    int keyGroup = getGroup(request.getKeys().get(i));
+
+                    if (i > 0 && keyGroup != group) {
+                        return -1;
+                    }
+
+                    group = keyGroup;
+                }
+
+                return group;
+            case SCAN:
+            case WATCH_PREFIX:
+                return groups.length == 1 || ShardMap.getHashTag(request.getKey()) != null ? getGroup(request.getKey()) : -1;
+            case PING:
+                return 0;
+            default:
+                return getGroup(request.getKey());
+        }
+    }
+
+    private int getGroup(String key) {
+        return groups.length == 1 ? 0 : shards.getGroup(key);
+    }
+}
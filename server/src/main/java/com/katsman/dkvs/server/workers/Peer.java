@@ -0,0 +1,147 @@
+package com.katsman.dkvs.server.workers;
+
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class Peer {
+    private final int id;
+    private final SocketAddress address;
+    private final int maxInflight;
+    private final Deque<Window> inflight;
+
+    private int nextIndex;
+    private int matchIndex;
+    private int readSequence;
+    private long lastContact;
+    private boolean probing;
+    private SnapshotTransfer transfer;
+
+    public Peer(int id, SocketAddress address, int maxInflight) {
+        this.id = id;
+        this.address = address;
+        this.maxInflight = maxInflight;
+        inflight = new ArrayDeque<>();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public int getNextIndex() {
+        return nextIndex;
+    }
+
+    public int getMatchIndex() {
+        return matchIndex;
+    }
+
+    public int getReadSequence() {
+        return readSequence;
+    }
+
+    public long getLastContact() {
+        return lastContact;
+    }
+
+    public void contacted(long time) {
+        lastContact = time;
+    }
+
+    public void acknowledgeRead(int readSequence) {
+        this.readSequence = Math.max(this.readSequence, readSequence);
+    }
+
+    public SnapshotTransfer getTransfer() {
+        return transfer;
+    }
+
+    public void setTransfer(SnapshotTransfer transfer) {
+        this.transfer = transfer;
+    }
+
+    public boolean hasInflight() {
+        return !inflight.isEmpty();
+    }
+
+    public boolean canSend() {
+        return probing ? inflight.isEmpty() : inflight.size() < maxInflight;
+    }
+
+    public void reset(int nextIndex) {
+        this.nextIndex = nextIndex;
+        matchIndex = 0;
+        probing = true;
+        inflight.clear();
+        finishTransfer();
+    }
+
+    public void sent(int end, long time) {
+        inflight.add(new Window(nextIndex, end, time));
+        nextIndex = end;
+    }
+
+    public void acknowledge(int length) {
+        matchIndex = Math.max(matchIndex, length);
+        nextIndex = Math.max(nextIndex, matchIndex);
+        probing = false;
+
+        while (!inflight.isEmpty() && inflight.peek().end <= matchIndex) {
+            inflight.poll();
+        }
+    }
+
+    public void reject(int nextIndex) {
+        this.nextIndex = Math.max(matchIndex, nextIndex);
+        probing = true;
+        inflight.clear();
+    }
+
+    public void installed(int index) {
+        matchIndex = Math.max(matchIndex, index);
+        nextIndex = matchIndex;
+        probing = false;
+        inflight.clear();
+        finishTransfer();
+    }
+
+    public void finishTransfer() {
+        if (transfer != null) {
+            transfer.close();
+            transfer = null;
+        }
+    }
+
+    public void expire(long time, long timeout) {
+        if (transfer != null) {
+            transfer.expire(time, timeout);
+        }
+
+        if (!inflight.isEmpty() && time - inflight.peek().time >= timeout) {
+            nextIndex = Math.max(matchIndex, inflight.peek().start);
+            probing = true;
+            inflight.clear();
+        }
+    }
+
+    private static class Window {
+        final int start;
+        final int end;
+        final long time;
+
+        Window(int start, int end, long time) {
+            this.start = start;
+            this.end = end;
+            this.time = time;
+        }
+    }
+}
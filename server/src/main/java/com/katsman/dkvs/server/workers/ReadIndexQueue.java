@@ -0,0 +1,98 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.Message;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ReadIndexQueue {
+    private final List<PendingRead> waiting;
+    private final List<PendingRead> round;
+    private final Deque<PendingRead> confirmed;
+
+    private int roundSequence;
+
+    public ReadIndexQueue() {
+        waiting = new ArrayList<>();
+        round = new ArrayList<>();
+        confirmed = new ArrayDeque<>();
+    }
+
+    public void add(Message request, int readIndex) {
+        waiting.add(new PendingRead(request, readIndex));
+    }
+
+    public void addConfirmed(Message request, int readIndex) {
+        confirmed.add(new PendingRead(request, readIndex));
+    }
+
+    public boolean canStartRound() {
+        return roundSequence == 0 && !waiting.isEmpty();
+    }
+
+    public void startRound(int sequence) {
+        round.addAll(waiting);
+        waiting.clear();
+        roundSequence = sequence;
+    }
+
+    public int getRoundSequence() {
+        return roundSequence;
+    }
+
+    public void confirmRound() {
+        confirmed.addAll(round);
+        round.clear();
+        roundSequence = 0;
+    }
+
+    public List<PendingRead> pollReady(int appliedIndex) {
+        List<PendingRead> ready = new ArrayList<>();
+
+        while (!confirmed.isEmpty() && confirmed.peek().readIndex <= appliedIndex) {
+            ready.add(confirmed.poll());
+        }
+
+        return ready;
+    }
+
+    public List<PendingRead> drain() {
+        List<PendingRead> drained = new ArrayList<>(confirmed);
+        drained.addAll(round);
+        drained.addAll(waiting);
+        confirmed.clear();
+        round.clear();
+        waiting.clear();
+        roundSequence = 0;
+        return drained;
+    }
+
+    public boolean isEmpty() {
+        return waiting.isEmpty() && round.isEmpty() && confirmed.isEmpty();
+    }
+
+    public static class PendingRead {
+        private final Message request;
+        private final int readIndex;
+
+        PendingRead(Message request, int readIndex) {
+            this.request = request;
+            this.readIndex = readIndex;
+        }
+
+        public Message getRequest() {
+            return request;
+        }
+
+        public int getReadIndex() {
+            return readIndex;
+        }
+    }
+}
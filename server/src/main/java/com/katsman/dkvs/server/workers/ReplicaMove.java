@@ -0,0 +1,42 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class ReplicaMove {
+    private final int from;
+    private final int to;
+    private final ClientServerRequest request;
+
+    private boolean added;
+
+    public ReplicaMove(int from, int to, ClientServerRequest request) {
+        this.from = from;
+        this.to = to;
+        this.request = request;
+    }
+
+    public int getFrom() {
+        return from;
+    }
+
+    public int getTo() {
+        return to;
+    }
+
+    public ClientServerRequest getRequest() {
+        return request;
+    }
+
+    public boolean isAdded() {
+        return added;
+    }
+
+    public void added() {
+        added = true;
+    }
+}
@@ -4,11 +4,24 @@ import com.katsman.dkvs.common.messages.Entry;
 import com.katsman.dkvs.common.messages.Message;
 import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
 import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
+import com.katsman.dkvs.common.utils.Operation;
 import com.katsman.dkvs.common.utils.ParseException;
 import com.katsman.dkvs.server.utils.Configuration;
+import com.katsman.dkvs.server.utils.Membership;
+import com.katsman.dkvs.server.utils.SegmentedLog;
+import com.katsman.dkvs.server.utils.ShardMap;
+import com.katsman.dkvs.server.utils.ShardState;
+import com.katsman.dkvs.server.utils.Snapshot;
+import com.katsman.dkvs.server.utils.StoredValue;
+import com.katsman.dkvs.server.utils.TimingWheel;
+import com.katsman.dkvs.server.utils.VersionedMap;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Alexey Katsman
@@ -16,120 +29,889 @@ import java.util.*;
  */
 
 public class ReplicatedStateMachine {
-    private final Map<String, String> data;
+    private final VersionedMap<StoredValue> data;
     private final Map<Integer, ClientServerRequest> requests;
-    private final List<Message> logEntries;
-    private final Writer writer;
+    private final Map<Integer, List<ClientServerRequest>> counterRequests;
+    private final TreeMap<Integer, Integer> termByFirstIndex;
+    private final TreeMap<Integer, Integer> firstIndexByTerm;
+    private final TimingWheel expirations;
+    private final Set<String> expired;
+    private final Set<String> dirty;
+    private final TreeMap<Integer, Membership> memberships;
+    private final List<ClientServerRequest> rejected;
+    private final ShardMap routing;
+    private final SegmentedLog log;
+    private final Path snapshotPath;
+    private final Path directory;
+    private final int snapshotEntries;
+    private final long snapshotBytes;
+    private final int group;
 
-    public ReplicatedStateMachine(Configuration configuration) throws ParseException, IOException {
-        data = new HashMap<>();
-        requests = new HashMap<>();
-        logEntries = new ArrayList<>();
-        String logFileName = "dkvs_" + (configuration.getNodeNumber() + 1) + ".log";
-        writer = new FileWriter(logFileName, true);
-        restore(logFileName);
+    private int snapshotIndex;
+    private int snapshotTerm;
+    private long bytesSinceSnapshot;
+    private Thread snapshotThread;
+    private FileChannel partChannel;
+    private Path partPath;
+    private int partIndex;
+    private ShardState shards;
+    private Membership membership;
+    private int appliedIndex;
+    private int appliedTerm;
+    private Membership appliedMembership;
+
+    private Listener listener;
+
+    private volatile Snapshot completedSnapshot;
+
+    public ReplicatedStateMachine(Configuration configuration, String name, int group, ShardMap routing) throws ParseException, IOException {
+        data = new VersionedMap<>();
+        requests = new ConcurrentHashMap<>();
+        counterRequests = new ConcurrentHashMap<>();
+        termByFirstIndex = new TreeMap<>();
+        firstIndexByTerm = new TreeMap<>();
+        expirations = new TimingWheel(configuration.getExpiryTick(), System.currentTimeMillis());
+        expired = new LinkedHashSet<>();
+        dirty = new LinkedHashSet<>();
+        rejected = new ArrayList<>();
+        this.routing = routing;
+        this.group = group;
+        shards = new ShardState(group, configuration.getGroups());
+        memberships = new TreeMap<>();
+        membership = Membership.bootstrap(configuration, group);
+        log = new SegmentedLog(name, configuration.getSegmentSize(), configuration.getCacheEntries());
+        directory = Paths.get(name);
+        snapshotPath = directory.resolve("snapshot");
+        partIndex = -1;
+        snapshotEntries = configuration.getSnapshotEntries();
+        snapshotBytes = configuration.getSnapshotBytes();
+        restore();
+    }
+
+    public synchronized String get(String key) {
+        StoredValue value = data.get(key);
+        return value == null ? null : value.getValue();
+    }
+
+    public synchronized String get(String key, long time) {
+        StoredValue value = lookup(key, time);
+        return value == null ? null : value.getValue();
+    }
+
+    public synchronized int getVersion(String key, long time) {
+        StoredValue value = lookup(key, time);
+        return value == null ? -1 : value.getVersion();
+    }
+
+    public synchronized long getDeadline(String key) {
+        StoredValue value = data.get(key);
+        return value == null ? 0 : value.getDeadline();
+    }
+
+    public synchronized List<String> scan(String from, String to, int limit, long time) {
+        List<String> keys = new ArrayList<>(Math.min(limit, 1024));
+
+        for (String key : data.keys(from, to)) {
+            if (keys.size() == limit) {
+                break;
+            }
+
+            if (owns(key) && lookup(key, time) != null) {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    public synchronized ShardState getShards() {
+        return shards.copy();
+    }
+
+    public Membership getMembership() {
+        return memberships.isEmpty() ? membership : memberships.lastEntry().getValue();
+    }
+
+    public Membership getCommittedMembership() {
+        return getMembership(log.getCommitIndex());
+    }
+
+    public synchronized boolean owns(String key) {
+        return shards.owns(ShardMap.getSlot(key));
+    }
+
+    public synchronized String collect(String cursor, int limit, int budget, List<String> keys) {
+        for (String key : data.keys(cursor, null)) {
+            if (keys.size() == limit || budget-- == 0) {
+                return key;
+            }
+
+            if (shards.isMigrating(ShardMap.getSlot(key))) {
+                keys.add(key);
+                dirty.remove(key);
+            }
+        }
+
+        return null;
     }
 
-    public String get(String key) {
-        return data.get(key);
+    public synchronized List<String> pollDirty(int limit) {
+        List<String> keys = new ArrayList<>(Math.min(limit, dirty.size()));
+        Iterator<String> iterator = dirty.iterator();
+
+        while (iterator.hasNext() && keys.size() < limit) {
+            keys.add(iterator.next());
+            iterator.remove();
+        }
+
+        return keys;
     }
 
-    public boolean containsKey(String key) {
-        return data.containsKey(key);
+    public synchronized int getDirtyCount() {
+        return dirty.size();
+    }
+
+    public synchronized List<ClientServerRequest> pollRejected() {
+        if (rejected.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ClientServerRequest> requests = new ArrayList<>(rejected);
+        rejected.clear();
+        return requests;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized boolean containsKey(String key, long time) {
+        return lookup(key, time) != null;
     }
 
     public void restore(List<Message> messages) {
-        logEntries.addAll(messages);
+        messages.forEach(this::persist);
+    }
+
+    public void add(Message message) {
+        persist(message);
     }
 
     public void add(Message message, ClientServerRequest request) {
-        logEntries.add(message);
-        requests.put(logEntries.size() - 1, request);
+        persist(message);
+        requests.put(log.size() - 1, request);
     }
 
-    public Message getLogEntry(int pos) {
-        return logEntries.get(pos);
+    public void add(Message message, List<ClientServerRequest> requests) {
+        persist(message);
+        counterRequests.put(log.size() - 1, requests);
     }
 
-    public void removeAfter(int pos) {
-        for (int i = pos + 1; i < logEntries.size(); i++) {
-            requests.remove(i);
+    public synchronized List<String> expire(long time, int limit) {
+        expirations.advance(time, (key, deadline) -> {
+            StoredValue value = data.get(key);
+
+            if (value != null && value.getDeadline() == deadline) {
+                expired.add(key);
+            }
+        });
+
+        List<String> keys = new ArrayList<>();
+        Iterator<String> iterator = expired.iterator();
+
+        while (iterator.hasNext() && keys.size() < limit) {
+            String key = iterator.next();
+            StoredValue value = data.get(key);
+
+            if (value == null || !value.isExpiredAt(time)) {
+                iterator.remove();
+            } else {
+                keys.add(key);
+            }
+        }
+
+        return keys;
+    }
+
+    public int getCommitIndex() {
+        return log.getCommitIndex();
+    }
+
+    public synchronized int getAppliedIndex() {
+        return appliedIndex;
+    }
+
+    public int getSnapshotIndex() {
+        return snapshotIndex;
+    }
+
+    public int getSnapshotTerm() {
+        return snapshotTerm;
+    }
+
+    public int getFirstIndex() {
+        return log.getFirstIndex();
+    }
+
+    public SnapshotTransfer openSnapshot() throws ParseException, IOException {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+
+        FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ);
+
+        try {
+            Snapshot snapshot = Snapshot.readHeader(channel);
+            return new SnapshotTransfer(channel, snapshot.getIndex(), snapshot.getTerm());
+        } catch (ParseException | IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long receiveSnapshot(int index, long offset, byte[] chunk) throws IOException {
+        if (partIndex != index) {
+            openPart(index);
+        }
+
+        long length = partChannel.size();
+
+        if (offset != length || chunk.length == 0) {
+            return length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+
+        while (buffer.hasRemaining()) {
+            partChannel.write(buffer, offset + buffer.position());
+        }
+
+        return offset + chunk.length;
+    }
+
+    public synchronized boolean installSnapshot() throws IOException {
+        Path path = partPath;
+        partChannel.force(true);
+        closePart();
+        Snapshot snapshot;
+
+        try {
+            snapshot = Snapshot.read(path, (key, value) -> {
+            });
+        } catch (ParseException e) {
+            Files.deleteIfExists(path);
+            return false;
+        }
+
+        finishSnapshot();
+        data.clear();
+        expirations.clear();
+        expired.clear();
+        dirty.clear();
+        bytesSinceSnapshot = 0;
+
+        try {
+            Snapshot.read(path, this::load);
+        } catch (ParseException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        Files.move(path, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        int index = snapshot.getIndex();
+
+        if (index > log.getFirstIndex() && index <= log.size() && getTerm(index - 1) == snapshot.getTerm()) {
+            requests.keySet().removeIf(i -> i < index);
+            counterRequests.keySet().removeIf(i -> i < index);
+            memberships.headMap(index).clear();
+            log.compact(index);
+        } else {
+            requests.clear();
+            counterRequests.clear();
+            memberships.clear();
+            log.reset(index);
+            termByFirstIndex.clear();
+            firstIndexByTerm.clear();
+        }
+
+        snapshotIndex = index;
+        snapshotTerm = snapshot.getTerm();
+        shards = snapshot.getShards();
+        membership = snapshot.getMembership();
+        appliedIndex = index;
+        appliedTerm = snapshotTerm;
+        appliedMembership = membership;
+        publish();
+        log.setCommitIndex(index);
+
+        if (listener != null) {
+            listener.onReset(index);
+        }
+
+        return true;
+    }
+
+    public boolean matches(int pos, int term) {
+        return pos < snapshotIndex || (pos < log.size() && getTerm(pos) == term);
+    }
+
+    public int getTerm(int pos) {
+        if (pos == snapshotIndex - 1) {
+            return snapshotTerm;
         }
 
-        int last = logEntries.size() - 1;
+        Map.Entry<Integer, Integer> entry = termByFirstIndex.floorEntry(pos);
+        return entry == null ? -1 : entry.getValue();
+    }
 
-        while (last > pos) {
-            logEntries.remove(last--);
+    public int getFirstIndexOfTerm(int pos) {
+        Integer first = termByFirstIndex.floorKey(pos);
+        return first == null ? snapshotIndex : Math.max(first, snapshotIndex);
+    }
+
+    public int getLastIndexOfTerm(int term) {
+        if (!firstIndexByTerm.containsKey(term)) {
+            return -1;
         }
+
+        Map.Entry<Integer, Integer> next = firstIndexByTerm.higherEntry(term);
+        return next == null ? log.size() - 1 : next.getValue() - 1;
+    }
+
+    public Message getLogEntry(int pos) {
+        return log.get(pos);
+    }
+
+    public void removeAfter(int pos) throws IOException {
+        for (int i = pos + 1; i < log.size(); i++) {
+            requests.remove(i);
+            counterRequests.remove(i);
+        }
+
+        log.truncate(pos + 1);
+        memberships.tailMap(pos, false).clear();
+        Map<Integer, Integer> removed = termByFirstIndex.tailMap(pos, false);
+        removed.values().forEach(firstIndexByTerm::remove);
+        removed.clear();
     }
 
     public int size() {
-        return logEntries.size();
+        return log.size();
+    }
+
+    public int getSyncedSize() {
+        return log.getSyncedSize();
+    }
+
+    public boolean hasPendingWrites() {
+        return log.hasPending();
+    }
+
+    public boolean isSynced() {
+        return log.isSynced();
+    }
+
+    public void sync(Runnable callback) throws IOException {
+        log.sync(callback);
+
+        if (completedSnapshot != null) {
+            Snapshot snapshot = completedSnapshot;
+
+            synchronized (this) {
+                completedSnapshot = null;
+                snapshotThread = null;
+                data.endSnapshot();
+                snapshotIndex = snapshot.getIndex();
+                snapshotTerm = snapshot.getTerm();
+            }
+
+            int index = snapshot.getIndex();
+            requests.keySet().removeIf(i -> i < index);
+            counterRequests.keySet().removeIf(i -> i < index);
+            membership = getMembership(index);
+            memberships.headMap(index).clear();
+            log.compact(index);
+        }
     }
 
     public void close() throws IOException {
-        writer.close();
+        finishSnapshot();
+        closePart();
+        log.close();
     }
 
-    public List<ClientServerResponse> commit(int last, int next) throws ParseException, IOException {
-        List<ClientServerResponse> responses = new ArrayList<>();
+    public List<Entry> commit(int last, int next) throws ParseException {
+        List<Entry> entries = new ArrayList<>(next - last);
 
         for (int i = last; i < next; i++) {
-            ClientServerResponse response = apply(i);
+            Message message = log.get(i);
 
-            if (response != null) {
-                responses.add(response);
+            if (!(message instanceof Entry)) {
+                throw new ParseException("Log file was corrupted!");
             }
 
-            writer.write(logEntries.get(i) + "\n");
+            entries.add((Entry) message);
+        }
+
+        log.setCommitIndex(next);
+        return entries;
+    }
+
+    public synchronized List<ClientServerResponse> apply(int first, List<Entry> entries) {
+        List<ClientServerResponse> responses = new ArrayList<>();
+
+        for (int i = Math.max(0, appliedIndex - first); i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            apply(first + i, entry, responses);
+            requests.remove(first + i);
+            counterRequests.remove(first + i);
+            bytesSinceSnapshot += entry.getSize();
+            appliedIndex = first + i + 1;
+            appliedTerm = entry.getTerm();
+        }
+
+        if (appliedIndex - snapshotIndex >= snapshotEntries || bytesSinceSnapshot >= snapshotBytes) {
+            takeSnapshot(appliedIndex);
         }
 
-        writer.flush();
         return responses;
     }
 
-    private void restore(String logFileName) throws ParseException, FileNotFoundException {
-        Scanner scanner = new Scanner(new File(logFileName));
+    private void finishSnapshot() {
+        if (snapshotThread != null) {
+            try {
+                snapshotThread.join();
+            } catch (InterruptedException ignored) {
+
+            }
+
+            snapshotThread = null;
+            completedSnapshot = null;
+            data.endSnapshot();
+        }
+    }
+
+    private void openPart(int index) throws IOException {
+        closePart();
+        String name = "snapshot." + index + ".part";
+        File[] parts = directory.toFile().listFiles((dir, file) -> file.startsWith("snapshot.") && file.endsWith(".part") && !file.equals(name));
+
+        if (parts != null) {
+            for (File part : parts) {
+                Files.deleteIfExists(part.toPath());
+            }
+        }
+
+        partPath = directory.resolve(name);
+        partChannel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        partIndex = index;
+    }
+
+    private void closePart() throws IOException {
+        if (partChannel != null) {
+            partChannel.close();
+            partChannel = null;
+            partIndex = -1;
+        }
+    }
+
+    private void takeSnapshot(int index) {
+        if (snapshotThread != null) {
+            return;
+        }
+
+        Snapshot snapshot = new Snapshot(index, appliedTerm, shards.copy(), appliedMembership);
+        bytesSinceSnapshot = 0;
+        data.beginSnapshot();
+        snapshotThread = new Thread(() -> {
+            try {
+                Snapshot.write(snapshotPath, snapshot, data);
+                completedSnapshot = snapshot;
+            } catch (IOException e) {
+                synchronized (System.out) {
+                    System.out.println("Can't write snapshot: " + e.getMessage());
+                }
+
+                completedSnapshot = new Snapshot(snapshotIndex, snapshotTerm);
+            }
+        }, "dkvs-snapshot");
+        snapshotThread.start();
+    }
+
+    private void restore() throws ParseException, IOException {
+        Snapshot snapshot = Snapshot.read(snapshotPath, this::load);
+
+        if (snapshot != null) {
+            snapshotIndex = snapshot.getIndex();
+            snapshotTerm = snapshot.getTerm();
+            shards = snapshot.getShards();
+            membership = snapshot.getMembership();
+        }
+
+        log.restore(this::appendTerm);
+
+        if (log.size() < snapshotIndex) {
+            log.reset(snapshotIndex);
+            termByFirstIndex.clear();
+            firstIndexByTerm.clear();
+        }
+
+        for (int i = snapshotIndex; i < log.size(); i++) {
+            track(i, (Entry) log.get(i));
+        }
+
+        if (log.getCommitIndex() < snapshotIndex) {
+            log.setCommitIndex(snapshotIndex);
+        }
+
+        List<ClientServerResponse> responses = new ArrayList<>();
+        appliedTerm = snapshotTerm;
+        appliedMembership = membership;
+
+        for (int i = snapshotIndex; i < log.getCommitIndex(); i++) {
+            Entry entry = (Entry) log.get(i);
+            apply(i, entry, responses);
+            appliedTerm = entry.getTerm();
+        }
+
+        appliedIndex = log.getCommitIndex();
+        publish();
+    }
+
+    private void publish() {
+        for (int slot = shards.next(0); slot >= 0; slot = shards.next(slot + 1)) {
+            routing.assign(slot, slot + 1, group);
+        }
+
+        if (shards.hasMigration() && shards.isReleased()) {
+            routing.assign(shards.getFrom(), shards.getTo(), shards.getTarget());
+        }
+    }
+
+    private void load(String key, StoredValue value) {
+        data.put(key, value);
+
+        if (value.getDeadline() != 0) {
+            expirations.add(key, value.getDeadline());
+        }
+    }
+
+    private void persist(Message message) {
+        track(log.size(), (Entry) message);
+        appendTerm(log.size(), ((Entry) message).getTerm());
+        log.append((Entry) message);
+    }
+
+    private void track(int pos, Entry entry) {
+        if (entry.getOperation() == Operation.CONFIG) {
+            memberships.put(pos, Membership.fromEntry(pos, entry));
+        }
+    }
+
+    private Membership getMembership(int index) {
+        Map.Entry<Integer, Membership> entry = memberships.lowerEntry(index);
+        return entry == null ? membership : entry.getValue();
+    }
+
+    private void appendTerm(int pos, int term) {
+        if (termByFirstIndex.isEmpty() || termByFirstIndex.lastEntry().getValue() != term) {
+            termByFirstIndex.put(pos, term);
+            firstIndexByTerm.put(term, pos);
+        }
+    }
+
+    private void changed(String key, int index) {
+        if (shards.hasMigration() && !shards.isReleased() && shards.isMigrating(ShardMap.getSlot(key))) {
+            dirty.add(key);
+        }
+
+        if (listener != null) {
+            listener.onChange(key, get(key), index);
+        }
+    }
+
+    private boolean owns(Entry entry) {
+        if (entry.getKey() != null && !owns(entry.getKey())) {
+            return false;
+        }
 
-        while (scanner.hasNext()) {
-            logEntries.add(Message.parse(scanner));
-            apply(logEntries.size() - 1);
+        for (String key : entry.getKeys()) {
+            if (!owns(key)) {
+                return false;
+            }
         }
 
-        scanner.close();
+        return true;
     }
 
-    private ClientServerResponse apply(int operationLogNumber) throws ParseException {
-        Message logMessage = logEntries.get(operationLogNumber);
+    static boolean isWrite(Operation operation) {
+        switch (operation) {
+            case SET:
+            case DELETE:
+            case MSET:
+            case MDELETE:
+            case CAS:
+            case SET_IF_ABSENT:
+            case DELETE_IF_EQUALS:
+            case ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
 
-        if (logMessage instanceof Entry) {
-            Entry entry = (Entry) logMessage;
+    private void reject(int operationLogNumber) {
+        if (requests.containsKey(operationLogNumber)) {
+            rejected.add(requests.get(operationLogNumber));
+        }
 
-            switch (entry.getOperation()) {
-                case SET:
-                    data.put(entry.getKey(), entry.getValue());
+        if (counterRequests.containsKey(operationLogNumber)) {
+            rejected.addAll(counterRequests.get(operationLogNumber));
+        }
+    }
+
+    private StoredValue lookup(String key, long time) {
+        StoredValue value = data.get(key);
+        return value == null || value.isExpiredAt(time) ? null : value;
+    }
 
-                    if (requests.containsKey(operationLogNumber)) {
-                        ClientServerRequest request = requests.get(operationLogNumber);
-                        return new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, request.getRedirections());
+    private void purge(int from, int to) {
+        for (String key : data.keys(null, null)) {
+            int slot = ShardMap.getSlot(key);
+
+            if (slot >= from && slot < to && !shards.owns(slot)) {
+                data.remove(key);
+            }
+        }
+    }
+
+    private static boolean matches(Entry entry, StoredValue current) {
+        if (entry.getOperation() == Operation.SET_IF_ABSENT) {
+            return current == null;
+        }
+
+        return current != null
+                && (entry.getExpected() == null || entry.getExpected().equals(current.getValue()))
+                && (entry.getExpectedVersion() < 0 || entry.getExpectedVersion() == current.getVersion());
+    }
+
+    private void apply(int operationLogNumber, Entry entry, List<ClientServerResponse> responses) {
+        if (isWrite(entry.getOperation()) && !owns(entry)) {
+            reject(operationLogNumber);
+            return;
+        }
+
+        switch (entry.getOperation()) {
+            case SET:
+                load(entry.getKey(), new StoredValue(entry.getValue(), operationLogNumber, entry.getDeadline()));
+                changed(entry.getKey(), operationLogNumber);
+
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, operationLogNumber, request.getRedirections()));
+                }
+
+                break;
+            case DELETE:
+                boolean success = data.containsKey(entry.getKey());
+                data.remove(entry.getKey());
+
+                if (success) {
+                    changed(entry.getKey(), operationLogNumber);
+                }
+
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, success, request.getRedirections()));
+                }
+
+                break;
+            case MSET:
+                for (int i = 0; i < entry.getKeys().size(); i++) {
+                    data.put(entry.getKeys().get(i), new StoredValue(entry.getValues().get(i), operationLogNumber));
+                    changed(entry.getKeys().get(i), operationLogNumber);
+                }
+
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    List<Boolean> successes = Collections.nCopies(entry.getKeys().size(), true);
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, Collections.emptyList(), successes, request.getRedirections()));
+                }
+
+                break;
+            case MDELETE:
+                List<Boolean> deleted = new ArrayList<>(entry.getKeys().size());
+
+                for (String key : entry.getKeys()) {
+                    deleted.add(data.remove(key) != null);
+
+                    if (deleted.get(deleted.size() - 1)) {
+                        changed(key, operationLogNumber);
                     }
+                }
 
-                    break;
-                case DELETE:
-                    boolean success = data.containsKey(entry.getKey());
-                    data.remove(entry.getKey());
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, Collections.emptyList(), deleted, request.getRedirections()));
+                }
 
-                    if (requests.containsKey(operationLogNumber)) {
-                        ClientServerRequest request = requests.get(operationLogNumber);
-                        return new ClientServerResponse(request.getAddress(), request.getOperation(), null, success, request.getRedirections());
+                break;
+            case CAS:
+            case SET_IF_ABSENT:
+            case DELETE_IF_EQUALS:
+                StoredValue current = data.get(entry.getKey());
+                boolean matches = matches(entry, current);
+
+                if (matches) {
+                    if (entry.getOperation() == Operation.DELETE_IF_EQUALS) {
+                        data.remove(entry.getKey());
+                    } else {
+                        data.put(entry.getKey(), new StoredValue(entry.getValue(), operationLogNumber));
                     }
 
-                    break;
-            }
+                    changed(entry.getKey(), operationLogNumber);
+                }
 
-            return null;
-        } else {
-            throw new ParseException("Log file was corrupted!");
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    String result = matches || current == null ? null : current.getValue();
+                    int version = matches ? operationLogNumber : (current == null ? -1 : current.getVersion());
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), result, matches, version, request.getRedirections()));
+                }
+
+                break;
+            case ADD:
+                StoredValue stored = data.get(entry.getKey());
+                List<ClientServerRequest> counters = counterRequests.get(operationLogNumber);
+                long number = 0;
+                boolean numeric = true;
+                boolean changed = false;
+
+                if (stored != null && stored.isNumeric()) {
+                    number = stored.getNumber();
+                } else if (stored != null) {
+                    try {
+                        number = Long.parseLong(stored.getValue());
+                    } catch (NumberFormatException e) {
+                        numeric = false;
+                    }
+                }
+
+                for (int i = 0; i < entry.getDeltas().length; i++) {
+                    String error = numeric ? null : "Value is not a number";
+
+                    if (numeric) {
+                        try {
+                            number = Math.addExact(number, entry.getDeltas()[i]);
+                            changed = true;
+                        } catch (ArithmeticException e) {
+                            error = "Value overflow";
+                        }
+                    }
+
+                    if (counters != null) {
+                        ClientServerRequest request = counters.get(i);
+                        int version = changed ? operationLogNumber : (stored == null ? -1 : stored.getVersion());
+                        String result = error == null ? Long.toString(number) : error;
+                        responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), result, error == null, version, request.getRedirections()));
+                    }
+                }
+
+                if (changed) {
+                    data.put(entry.getKey(), new StoredValue(number, operationLogNumber, stored == null ? 0 : stored.getDeadline()));
+                    changed(entry.getKey(), operationLogNumber);
+                }
+
+                break;
+            case EXPIRE:
+                for (String key : entry.getKeys()) {
+                    StoredValue value = data.get(key);
+
+                    if (value != null && value.isExpiredAt(entry.getDeadline())) {
+                        data.remove(key);
+                        changed(key, operationLogNumber);
+                    }
+
+                    expired.remove(key);
+                }
+
+                break;
+            case MIGRATE:
+                int from = (int) entry.getDeltas()[0];
+                int to = (int) entry.getDeltas()[1];
+                int peer = (int) entry.getDeltas()[2];
+
+                if (!shards.hasMigration() && shards.owns(from, to)) {
+                    shards.migrate(from, to, peer);
+                    dirty.clear();
+                }
+
+                break;
+            case RELEASE:
+                from = (int) entry.getDeltas()[0];
+                to = (int) entry.getDeltas()[1];
+                peer = (int) entry.getDeltas()[2];
+
+                if (shards.isMigration(from, to, peer) && !shards.isReleased()) {
+                    shards.release();
+                    routing.assign(from, to, peer);
+
+                    if (listener != null) {
+                        listener.onRelease(from, to);
+                    }
+                }
+
+                break;
+            case PURGE:
+                from = (int) entry.getDeltas()[0];
+                to = (int) entry.getDeltas()[1];
+                peer = (int) entry.getDeltas()[2];
+                purge(from, to);
+
+                if (shards.isMigration(from, to, peer) && shards.isReleased()) {
+                    shards.finish();
+                    dirty.clear();
+                }
+
+                break;
+            case IMPORT:
+                for (int i = 0; i < entry.getKeys().size(); i++) {
+                    String key = entry.getKeys().get(i);
+
+                    if (owns(key)) {
+                        continue;
+                    }
+
+                    if (entry.getValues().get(i) == null) {
+                        data.remove(key);
+                    } else {
+                        load(key, new StoredValue(entry.getValues().get(i), operationLogNumber, entry.getDeltas()[i]));
+                    }
+                }
+
+                break;
+            case ADOPT:
+                from = (int) entry.getDeltas()[0];
+                to = (int) entry.getDeltas()[1];
+                shards.adopt(from, to);
+                routing.assign(from, to, group);
+                break;
+            case CONFIG:
+                appliedMembership = Membership.fromEntry(operationLogNumber, entry);
+
+                if (requests.containsKey(operationLogNumber)) {
+                    ClientServerRequest request = requests.get(operationLogNumber);
+                    responses.add(new ClientServerResponse(request.getAddress(), request.getOperation(), null, true, operationLogNumber, request.getRedirections()));
+                }
+
+                break;
         }
     }
+
+    public interface Listener {
+        void onChange(String key, String value, int index);
+
+        void onReset(int index);
+
+        void onRelease(int from, int to);
+    }
 }
@@ -6,16 +6,31 @@ import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
 import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
 import com.katsman.dkvs.common.messages.ssp.AppendEntriesRequest;
 import com.katsman.dkvs.common.messages.ssp.AppendEntriesResult;
+import com.katsman.dkvs.common.messages.ssp.InstallSnapshotRequest;
+import com.katsman.dkvs.common.messages.ssp.GroupMessage;
+import com.katsman.dkvs.common.messages.ssp.InstallSnapshotResponse;
+import com.katsman.dkvs.common.messages.ssp.MigrateRequest;
+import com.katsman.dkvs.common.messages.ssp.MigrateResponse;
+import com.katsman.dkvs.common.messages.ssp.ReadIndexRequest;
+import com.katsman.dkvs.common.messages.ssp.ReadIndexResponse;
+import com.katsman.dkvs.common.messages.ssp.TimeoutNowRequest;
 import com.katsman.dkvs.common.messages.ssp.VoteRequest;
 import com.katsman.dkvs.common.messages.ssp.VoteResponse;
+import com.katsman.dkvs.common.utils.Operation;
 import com.katsman.dkvs.common.utils.ParseException;
 import com.katsman.dkvs.server.utils.Configuration;
-import com.katsman.dkvs.server.utils.ConnectionFactory;
+import com.katsman.dkvs.server.utils.LoadMetrics;
+import com.katsman.dkvs.server.utils.Membership;
+import com.katsman.dkvs.server.utils.MpscQueue;
+import com.katsman.dkvs.server.utils.RateLimiter;
+import com.katsman.dkvs.server.utils.ShardState;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Alexey Katsman
@@ -23,66 +38,164 @@ import java.util.*;
  */
 
 public class Server extends Thread {
+    private static final int MAX_BATCH = 1024;
+
     private final ReplicatedStateMachine rsm;
     private final Configuration configuration;
-    private final ConnectionFactory factory;
-    private final Queue<Message> requests;
-    private final Queue<Message> responses;
+    private final Node node;
+    private final int group;
+    private final String name;
+    private final MpscQueue<Message> requests;
+    private final List<Message> outbox;
+    private final List<Message> syncOutbox;
+    private final Runnable wakeUp;
     private final ServerState state;
+    private final RateLimiter snapshotLimiter;
+    private final ReadIndexQueue leaderReads;
+    private final ReadIndexQueue followerReads;
+    private final Map<Integer, ClientServerRequest> forwardedReads;
+    private final TreeMap<Integer, Long> sequenceTimes;
+    private final Map<String, List<ClientServerRequest>> pendingCounters;
+    private final WatchRegistry watches;
+    private final LoadMetrics metrics;
+    private final Applier applier;
+    private final TreeMap<Integer, MigrateRequest> pendingMigrations;
+
+    private int nextReadRequestId;
+    private int forwardedReadsLeader;
+    private int expireIndex;
+    private int nextMigrateRequestId;
+    private long lastBalanceTime;
+    private int ownedSlots;
+    private MigrationTask migration;
+    private Membership committedMembership;
+    private LeadershipTransfer transfer;
+    private ReplicaMove move;
+    private long leaderSince;
+    private int electionTimeout;
+    private int syncedSize;
 
     private volatile boolean active;
+    private volatile boolean woken;
+    private volatile Membership membership;
 
-    public Server(Configuration configuration) throws ParseException, IOException {
-        rsm = new ReplicatedStateMachine(configuration);
+    public Server(Configuration configuration, int group, Node node) throws ParseException, IOException {
+        name = "dkvs_" + (configuration.getNodeNumber() + 1) + (configuration.getGroups() > 1 ? "_" + group : "");
+        rsm = new ReplicatedStateMachine(configuration, name, group, node.getShards());
         this.configuration = configuration;
-        factory = new ConnectionFactory(configuration, this);
-        requests = new ArrayDeque<>();
-        responses = new ArrayDeque<>();
+        this.group = group;
+        this.node = node;
+        requests = new MpscQueue<>();
+        outbox = new ArrayList<>();
+        syncOutbox = new ArrayList<>();
+        wakeUp = this::wake;
         state = new ServerState();
-        state.commitIndex = rsm.size();
+        state.commitIndex = rsm.getCommitIndex();
+        syncedSize = rsm.getSyncedSize();
+        updatePeers();
+        leaderReads = new ReadIndexQueue();
+        followerReads = new ReadIndexQueue();
+        forwardedReads = new HashMap<>();
+        sequenceTimes = new TreeMap<>();
+        pendingCounters = new LinkedHashMap<>();
+        watches = new WatchRegistry(configuration.getWatchBufferKeys());
+        rsm.setListener(watches);
+        metrics = new LoadMetrics(System.currentTimeMillis());
+        applier = new Applier(name, rsm, node, group, configuration.getScanPageSize(), metrics, () -> {
+            if (watches.hasPending()) {
+                wake();
+            }
+        });
+        applier.start();
+        pendingMigrations = new TreeMap<>();
+        snapshotLimiter = new RateLimiter(
+                configuration.getSnapshotRate(),
+                Math.max(configuration.getSnapshotChunkSize(), configuration.getSnapshotRate() * configuration.getTimeout() / 2000)
+        );
 
-        if (configuration.getNodeNumber() == 0) {
-            state.state = State.LEADER;
-        } else {
-            state.state = State.FOLLOWER;
-        }
+        state.state = State.FOLLOWER;
 
         active = true;
     }
 
     public void add(Message message) {
-        synchronized (requests) {
-            requests.add(message);
-            requests.notify();
-        }
+        requests.add(message);
     }
 
-    public Message get() throws InterruptedException {
-        while (true) {
-            synchronized (responses) {
-                if (!responses.isEmpty()) {
-                    return responses.poll();
-                }
+    public int getLeader() {
+        return state.leader;
+    }
 
-                responses.wait();
-            }
+    public boolean isLeader() {
+        return state.state.equals(State.LEADER);
+    }
+
+    public LoadMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ShardState getShards() {
+        return rsm.getShards();
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public SocketAddress getLeaderAddress() {
+        int leader = state.leader;
+        return leader == -1 ? null : membership.getAddress(leader);
+    }
+
+    public SocketAddress getRouteAddress() {
+        Membership membership = this.membership;
+        SocketAddress address = getLeaderAddress();
+
+        if (address != null || membership.contains(configuration.getNodeNumber()) || membership.getVoters().isEmpty()) {
+            return address;
         }
+
+        List<Integer> voters = new ArrayList<>(membership.getVoters());
+        return membership.getAddress(voters.get(ThreadLocalRandom.current().nextInt(voters.size())));
     }
 
     @Override
     public void run() {
-        factory.start();
-        state.lastMessageTime = System.currentTimeMillis();
+        resetElectionTimer();
 
         while (active) {
             try {
                 Message message = getMessage();
 
-                if (message == null) {
+                if (message != null) {
+                    process(message);
+                } else if (isTimedOut()) {
                     processTimeout();
-                } else {
+                }
+
+                long deadline = System.currentTimeMillis() + configuration.getGroupCommitWindow();
+
+                for (int i = 0; i < MAX_BATCH && (message = pollMessage(rsm.hasPendingWrites() ? deadline : 0)) != null; i++) {
                     process(message);
                 }
+
+                if (state.state.equals(State.LEADER) && rsm.getSyncedSize() != syncedSize) {
+                    syncedSize = rsm.getSyncedSize();
+                    toCommit();
+                }
+
+                appendCounters();
+                appendExpired();
+                balance();
+                migrate();
+                promoteLearners();
+                moveReplica();
+                checkTransfer();
+                restorePreferredLeader();
+                failStaleReads();
+                watches.drain(node::isConnected, node::isWritable).forEach(this::printAndSend);
+                updatePeers();
+                flush();
             } catch (InterruptedException | ParseException | IOException e) {
                 try {
                     close();
@@ -95,103 +208,172 @@ public class Server extends Thread {
         }
     }
 
-    private void processTimeout() throws IOException {
+    private void processTimeout() throws ParseException, IOException {
         switch (state.state) {
             case LEADER:
-                for (int i = 0; i < configuration.getServersCount(); i++) {
-                    if (i == configuration.getNodeNumber()) {
-                        continue;
-                    }
-
-                    List<Message> logEntries = new ArrayList<>();
-
-                    for (int j = 0; j < (rsm.size() - state.nextLogIndex.get(i)); j++) {
-                        logEntries.add(rsm.getLogEntry(state.nextLogIndex.get(i) + j));
-                    }
-
-                    SocketAddress address = new InetSocketAddress(configuration.getHosts().get(i), configuration.getPorts().get(i));
-                    int prevLogTerm = -1;
+                long time = System.currentTimeMillis();
+                sequenceTimes.put(++state.readSequence, time);
 
-                    if (state.nextLogIndex.get(i) != 0) {
-                        Message entry = rsm.getLogEntry(state.nextLogIndex.get(i) - 1);
-                        if (entry instanceof Entry) {
-                            prevLogTerm = ((Entry) entry).getTerm();
-                        }
-                    }
+                for (Peer peer : state.peers.values()) {
+                    peer.expire(time, getTimeout());
+                    replicate(peer, true);
+                }
 
-                    printAndSend(new AppendEntriesRequest(
-                            address,
-                            state.term,
-                            configuration.getNodeNumber(),
-                            state.nextLogIndex.get(i) - 1,
-                            prevLogTerm,
-                            logEntries,
-                            state.commitIndex
-                    ));
+                if (configuration.isCheckQuorum() && !hasQuorumContact(time)) {
+                    System.out.println(getStatus() + " Lost contact with quorum, stepping down");
+                    state.state = State.FOLLOWER;
+                    state.leader = -1;
                 }
 
                 break;
             default:
-                state.state = State.CANDIDATE;
-                state.leader = -1;
-                state.setTerm(state.term + 1);
-                state.setVotedFor(configuration.getNodeNumber());
-                state.votesCount = 1;
-
-                if (configuration.getServersCount() == 1) {
-                    state.state = State.LEADER;
-                    state.nextLogIndex.set(0, rsm.size());
-                    state.matchLogIndex.set(0, 0);
+                Membership membership = rsm.getMembership();
+
+                if (!membership.isVoter(configuration.getNodeNumber())) {
+                    break;
                 }
 
-                for (int i = 0; i < configuration.getServersCount(); i++) {
-                    if (i == configuration.getNodeNumber()) {
-                        continue;
-                    }
+                if (configuration.isPreVote() && membership.getVoters().size() > 1) {
+                    state.state = State.PRE_CANDIDATE;
+                    state.leader = -1;
+                    state.votes.clear();
+                    state.votes.add(configuration.getNodeNumber());
+                    requestVotes(membership, state.term + 1, true, false);
+                } else {
+                    startElection(membership, false);
+                }
+        }
+
+        resetElectionTimer();
+    }
 
-                    SocketAddress address = new InetSocketAddress(configuration.getHosts().get(i), configuration.getPorts().get(i));
-                    int lastLogTerm = -1;
+    private void startElection(Membership membership, boolean transfer) throws ParseException, IOException {
+        state.state = State.CANDIDATE;
+        state.leader = -1;
+        state.setTerm(state.term + 1);
+        state.setVotedFor(configuration.getNodeNumber());
+        state.votes.clear();
+        state.votes.add(configuration.getNodeNumber());
+        resetElectionTimer();
+
+        if (membership.getVoters().size() == 1) {
+            becomeLeader();
+            toCommit();
+        }
 
-                    if (rsm.size() != 0) {
-                        Message entry = rsm.getLogEntry(rsm.size() - 1);
+        requestVotes(membership, state.term, false, transfer);
+    }
 
-                        if (entry instanceof Entry) {
-                            lastLogTerm = ((Entry) entry).getTerm();
-                        }
-                    }
+    private void requestVotes(Membership membership, int term, boolean preVote, boolean transfer) {
+        int lastLogTerm = rsm.size() == 0 ? -1 : rsm.getTerm(rsm.size() - 1);
 
-                    printAndSend(new VoteRequest(
-                            address,
-                            state.term,
-                            configuration.getNodeNumber(),
-                            rsm.size() - 1,
-                            lastLogTerm
-                    ));
-                }
+        for (int i : membership.getVoters()) {
+            if (i == configuration.getNodeNumber()) {
+                continue;
+            }
+
+            printAndSend(new VoteRequest(
+                    membership.getAddress(i),
+                    term,
+                    configuration.getNodeNumber(),
+                    rsm.size() - 1,
+                    lastLogTerm,
+                    preVote,
+                    transfer
+            ));
         }
+    }
 
+    private void resetElectionTimer() {
         state.lastMessageTime = System.currentTimeMillis();
+        electionTimeout = configuration.getTimeout() + ThreadLocalRandom.current().nextInt(configuration.getTimeout());
+    }
+
+    private boolean hasQuorumContact(long time) {
+        Membership membership = rsm.getMembership();
+        int count = membership.isVoter(configuration.getNodeNumber()) ? 1 : 0;
+
+        for (int id : membership.getVoters()) {
+            Peer peer = state.peers.get(id);
+
+            if (peer != null && time - peer.getLastContact() < configuration.getTimeout()) {
+                count++;
+            }
+        }
+
+        return count >= membership.getQuorum();
     }
 
     private void processClientServerRequest(ClientServerRequest request) throws ParseException, IOException {
         switch (request.getOperation()) {
+            case MSET:
             case SET:
             case DELETE:
-                if (state.state.equals(State.LEADER)) {
-                    rsm.add(new Entry(state.term, request.getOperation(), request.getKey(), request.getValue()), request);
-                    toCommit();
-                    processTimeout();
-                } else if (state.leader != -1) {
-                    SocketAddress address = new InetSocketAddress(configuration.getHosts().get(state.leader), configuration.getPorts().get(state.leader));
-                    ClientServerRequest localRequest = new ClientServerRequest(
-                            address,
-                            request.getKey(),
-                            request.getValue(),
+            case MDELETE:
+            case CAS:
+            case SET_IF_ABSENT:
+            case DELETE_IF_EQUALS:
+            case INCR:
+            case DECR:
+            case ADD:
+            case ADD_NODE:
+            case ADD_LEARNER:
+            case REMOVE_NODE:
+            case TRANSFER_LEADER:
+            case MOVE_REPLICA:
+                if (request.getOperation() == Operation.MSET && request.getKeys().size() != request.getValues().size()) {
+                    printAndSend(new ClientServerResponse(
+                            request.getAddress(),
                             request.getOperation(),
+                            "Keys and values count mismatch",
+                            false,
                             request.getRedirections()
-                    );
-                    localRequest.getRedirections().add((InetSocketAddress) request.getAddress());
-                    printAndSend(localRequest);
+                    ));
+                } else if (state.state.equals(State.LEADER) && transfer != null) {
+                    if (group == 0 || !isMembershipChange(request) && request.getOperation() != Operation.TRANSFER_LEADER) {
+                        printAndSend(new ClientServerResponse(
+                                request.getAddress(),
+                                request.getOperation(),
+                                "Leadership transfer in progress",
+                                false,
+                                request.getRedirections()
+                        ));
+                    }
+                } else if (state.state.equals(State.LEADER) && request.getOperation() == Operation.TRANSFER_LEADER) {
+                    startTransfer(request);
+                } else if (state.state.equals(State.LEADER) && request.getOperation() == Operation.MOVE_REPLICA) {
+                    startMove(request);
+                } else if (state.state.equals(State.LEADER) && isMembershipChange(request)) {
+                    changeMembership(request);
+                } else if (state.state.equals(State.LEADER) && !owns(request)) {
+                    moved(request);
+                } else if (state.state.equals(State.LEADER) && isCounter(request)) {
+                    addCounter(request);
+                } else if (state.state.equals(State.LEADER)) {
+                    appendCounters();
+                    rsm.add(toEntry(request), request);
+                    toCommit();
+                    replicate();
+                } else {
+                    forward(request);
+                }
+
+                return;
+            case GET:
+            case MGET:
+            case SCAN:
+                if (!isMember()) {
+                    forward(request);
+                } else if (isWithinBound(request) || hasLease()) {
+                    answerRead(request);
+                } else if (state.state.equals(State.LEADER)) {
+                    leaderReads.add(request, state.commitIndex);
+                    startReadRound();
+                } else if (getLeaderAddress() != null) {
+                    SocketAddress address = getLeaderAddress();
+                    forwardedReads.put(nextReadRequestId, request);
+                    forwardedReadsLeader = state.leader;
+                    printAndSend(new ReadIndexRequest(address, state.term, configuration.getNodeNumber(), nextReadRequestId++));
                 } else {
                     printAndSend(new ClientServerResponse(
                             request.getAddress(),
@@ -203,14 +385,41 @@ public class Server extends Thread {
                 }
 
                 return;
-            case GET:
-                printAndSend(new ClientServerResponse(
-                        request.getAddress(),
-                        request.getOperation(),
-                        rsm.get(request.getKey()),
-                        rsm.containsKey(request.getKey()),
-                        request.getRedirections()
-                ));
+            case WATCH:
+            case WATCH_PREFIX:
+                if (!isMember()) {
+                    printAndSend(new ClientServerResponse(
+                            request.getAddress(),
+                            request.getOperation(),
+                            "Group is not replicated on this node",
+                            false,
+                            request.getRedirections()
+                    ));
+                    return;
+                }
+
+                synchronized (rsm) {
+                    if (owns(request)) {
+                        printAndSend(watches.add(request, rsm));
+                    } else {
+                        moved(request);
+                    }
+                }
+
+                return;
+            case UNWATCH:
+                watches.remove(request.getAddress());
+
+                if (group == 0) {
+                    printAndSend(new ClientServerResponse(
+                            request.getAddress(),
+                            request.getOperation(),
+                            null,
+                            true,
+                            request.getRedirections()
+                    ));
+                }
+
                 return;
             case PING:
                 printAndSend(new ClientServerResponse(
@@ -226,218 +435,1579 @@ public class Server extends Thread {
         }
     }
 
-    private void processClientServerResponse(ClientServerResponse response) {
-        ClientServerResponse localResponse = new ClientServerResponse(
-                response.getRedirections().get(response.getRedirections().size() - 1),
-                response.getOperation(),
-                response.getResult(),
-                response.isSuccess(),
-                response.getRedirections()
-        );
-        localResponse.getRedirections().remove(localResponse.getRedirections().size() - 1);
-        printAndSend(localResponse);
+    private boolean isMember() {
+        return membership.contains(configuration.getNodeNumber());
     }
 
-    private void processAppendEntriesRequest(AppendEntriesRequest request) throws ParseException, IOException {
-        if (request.getTerm() >= state.term) {
-            state.state = State.FOLLOWER;
-            state.setTerm(request.getTerm());
-            state.leader = request.getLeaderId();
-            state.lastMessageTime = System.currentTimeMillis();
+    private void forward(ClientServerRequest request) {
+        SocketAddress address = getRouteAddress();
+
+        if (address == null || request.getRedirections().size() > configuration.getServersCount()) {
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    "Unknown leader",
+                    false,
+                    request.getRedirections()
+            ));
+            return;
         }
 
-        if (request.getTerm() == state.term && (request.getPrevLogIndex() == -1 || (rsm.size() > request.getPrevLogIndex() && ((Entry) rsm.getLogEntry(request.getPrevLogIndex())).getTerm() == request.getPrevLogTerm()))) {
-            rsm.removeAfter(request.getPrevLogIndex());
-            rsm.restore(request.getEntries());
+        ClientServerRequest localRequest = new ClientServerRequest(
+                address,
+                request.getKey(),
+                request.getValue(),
+                request.getKeys(),
+                request.getValues(),
+                request.getExpected(),
+                request.getExpectedVersion(),
+                request.getOperation(),
+                request.getConsistency(),
+                request.getMaxLagMillis(),
+                request.getMaxLagEntries(),
+                request.getTtl(),
+                request.getLimit(),
+                new ArrayList<>(request.getRedirections())
+        );
+        localRequest.getRedirections().add((InetSocketAddress) request.getAddress());
+        printAndSend(localRequest);
+    }
 
-            if (request.getLeaderCommit() > state.commitIndex) {
-                commit(Math.min(request.getLeaderCommit(), rsm.size()));
-            }
+    private boolean owns(ClientServerRequest request) {
+        if (request.getKey() != null && !rsm.owns(request.getKey())) {
+            return false;
+        }
 
-            printAndSend(new AppendEntriesResult(request.getAddress(), state.term, true, rsm.size(), configuration.getNodeNumber()));
-        } else {
-            printAndSend(new AppendEntriesResult(request.getAddress(), state.term, false, rsm.size(), configuration.getNodeNumber()));
+        for (String key : request.getKeys()) {
+            if (!rsm.owns(key)) {
+                return false;
+            }
         }
+
+        return true;
     }
 
-    private void processAppendEntriesResult(AppendEntriesResult result) throws ParseException, IOException {
-        if (result.isSuccess()) {
-            state.nextLogIndex.set(result.getId(), result.getLength());
-            state.matchLogIndex.set(result.getId(), result.getLength());
-            toCommit();
-        } else {
-            state.nextLogIndex.set(result.getId(), state.nextLogIndex.get(result.getId()) - 1);
+    private void moved(ClientServerRequest request) {
+        int target = node.getGroup(request);
+
+        if (target != group && target != -1) {
+            node.add(request);
+            return;
         }
+
+        printAndSend(new ClientServerResponse(
+                request.getAddress(),
+                request.getOperation(),
+                "Shard is moving",
+                false,
+                request.getRedirections()
+        ));
     }
 
-    private void processVoteRequest(VoteRequest request) throws IOException {
-        if (request.getTerm() < state.term) {
-            printAndSend(new VoteResponse(request.getAddress(), state.term, false));
-        } else {
-            if (request.getTerm() > state.term) {
-                state.state = State.FOLLOWER;
-                state.setTerm(request.getTerm());
-                state.setVotedFor(-1);
-            }
+    private static boolean isMembershipChange(ClientServerRequest request) {
+        switch (request.getOperation()) {
+            case ADD_NODE:
+            case ADD_LEARNER:
+            case REMOVE_NODE:
+                return true;
+            default:
+                return false;
+        }
+    }
 
-            int lastLogTerm = rsm.size() == 0 ? -2 : ((Entry) rsm.getLogEntry(rsm.size() - 1)).getTerm();
-            boolean newest = request.getLastLogTerm() > lastLogTerm || (request.getLastLogTerm() == lastLogTerm && request.getLastLogIndex() >= rsm.size() - 1);
+    private void changeMembership(ClientServerRequest request) throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
+        boolean add = request.getOperation() != Operation.REMOVE_NODE;
+        InetSocketAddress address = add ? Membership.parseAddress(request.getValue()) : null;
+        String error = null;
+        int id = parseId(request.getKey());
+
+        if (id < 0) {
+            error = "Node id is not a positive number";
+        } else if (membership.getIndex() >= state.commitIndex || !hasCommittedInTerm()) {
+            error = "Membership change in progress";
+        } else if (request.getOperation() == Operation.ADD_NODE && membership.isLearner(id) && !membership.isStaging(id)) {
+            address = membership.getAddress(id);
+        } else if (add && membership.contains(id)) {
+            error = "Node is already a member";
+        } else if (add && address == null) {
+            error = "Bad node address";
+        } else if (request.getOperation() == Operation.REMOVE_NODE && !membership.contains(id)) {
+            error = "Node is not a member";
+        } else if (request.getOperation() == Operation.REMOVE_NODE && membership.getVoters().equals(Collections.singleton(id))) {
+            error = "Can't remove the last voter";
+        }
 
-            if (newest && (state.votedFor == -1 || state.votedFor == request.getCandidateId())) {
-                state.setVotedFor(request.getCandidateId());
-                printAndSend(new VoteResponse(request.getAddress(), state.term, true));
-            } else {
-                printAndSend(new VoteResponse(request.getAddress(), state.term, false));
+        if (error != null) {
+            if (group == 0) {
+                printAndSend(new ClientServerResponse(
+                        request.getAddress(),
+                        request.getOperation(),
+                        error,
+                        false,
+                        request.getRedirections()
+                ));
             }
-        }
-    }
 
-    private void processVoteResponse(VoteResponse response) throws IOException {
-        if (!state.state.equals(State.CANDIDATE)) {
             return;
         }
 
-        if (response.getTerm() == state.term && response.isVoteGranted()) {
-            state.votesCount++;
+        Membership next = add
+                ? membership.withLearner(rsm.size(), id, address, request.getOperation() == Operation.ADD_NODE)
+                : membership.without(rsm.size(), id);
+        appendMembership(next, group == 0 ? request : null);
+    }
+
+    private void startTransfer(ClientServerRequest request) {
+        Membership membership = rsm.getMembership();
+        int target = -1;
 
-            if (state.votesCount > configuration.getServersCount() / 2) {
-                state.state = State.LEADER;
+        if (request.getKey() == null || request.getKey().equals("-")) {
+            for (int id : membership.getVoters()) {
+                Peer peer = state.peers.get(id);
 
-                for (int i = 0; i < state.nextLogIndex.size(); i++) {
-                    state.nextLogIndex.set(i, rsm.size());
-                    state.matchLogIndex.set(i, 0);
+                if (peer != null && (target == -1 || peer.getMatchIndex() > state.peers.get(target).getMatchIndex())) {
+                    target = id;
                 }
+            }
+        } else {
+            target = parseId(request.getKey());
+        }
 
-                processTimeout();
+        String error = null;
+
+        if (target == configuration.getNodeNumber()) {
+            error = "";
+        } else if (target < 0 || !membership.isVoter(target)) {
+            error = "Node is not a voter";
+        }
+
+        if (error != null) {
+            if (group == 0) {
+                printAndSend(new ClientServerResponse(
+                        request.getAddress(),
+                        request.getOperation(),
+                        error.isEmpty() ? null : error,
+                        error.isEmpty(),
+                        request.getRedirections()
+                ));
             }
-        } else if (response.getTerm() > state.term) {
-            state.setTerm(response.getTerm());
-            state.setVotedFor(-1);
-            state.state = State.FOLLOWER;
+
+            return;
         }
+
+        beginTransfer(target, group == 0 ? request : null);
     }
 
-    private void process(Message message) throws ParseException, IOException {
-        System.out.println(getStatus() + " Message received (" + message.getAddress() + "): " + message.print());
+    private void restorePreferredLeader() {
+        int preferred = group % configuration.getServersCount();
+        long time = System.currentTimeMillis();
+
+        if (!state.state.equals(State.LEADER)
+                || transfer != null
+                || preferred == configuration.getNodeNumber()
+                || configuration.getPreferredLeaderDelay() < 0
+                || time - leaderSince < configuration.getPreferredLeaderDelay()
+                || !rsm.getMembership().isVoter(preferred)
+                || !hasCommittedInTerm()) {
+            return;
+        }
 
-        if (message instanceof ClientServerRequest) {
-            processClientServerRequest((ClientServerRequest) message);
-        } else if (message instanceof ClientServerResponse) {
-            processClientServerResponse((ClientServerResponse) message);
-        } else if (message instanceof AppendEntriesRequest) {
-            processAppendEntriesRequest((AppendEntriesRequest) message);
-        } else if (message instanceof AppendEntriesResult) {
-            processAppendEntriesResult((AppendEntriesResult) message);
-        } else if (message instanceof VoteRequest) {
-            processVoteRequest((VoteRequest) message);
-        } else if (message instanceof VoteResponse) {
-            processVoteResponse((VoteResponse) message);
-        } else {
-            throw new AssertionError();
+        Peer peer = state.peers.get(preferred);
+
+        if (peer == null || time - peer.getLastContact() >= configuration.getTimeout() || peer.getMatchIndex() < state.commitIndex) {
+            return;
         }
+
+        leaderSince = time;
+        beginTransfer(preferred, null);
     }
 
-    private Message getMessage() throws InterruptedException {
-        while (true) {
-            synchronized (requests) {
-                if (!requests.isEmpty()) {
-                    return requests.poll();
-                } else if ((System.currentTimeMillis() - state.lastMessageTime) >= getTimeout()) {
-                    return null;
-                } else {
-                    requests.wait(getTimeout() - (System.currentTimeMillis() - state.lastMessageTime));
-                }
+    private void beginTransfer(int target, ClientServerRequest request) {
+        System.out.println(getStatus() + " Transferring leadership to node " + (target + 1));
+        transfer = new LeadershipTransfer(target, state.term, System.currentTimeMillis() + configuration.getTimeout(), request);
+        replicate();
+        checkTransfer();
+    }
+
+    private void checkTransfer() {
+        if (transfer == null) {
+            return;
+        }
+
+        if (!state.state.equals(State.LEADER) || state.term != transfer.getTerm()) {
+            if (state.leader == transfer.getTarget()) {
+                finishTransfer(null);
+            } else if (state.leader != -1) {
+                finishTransfer("Leadership moved to another node");
+            } else if (transfer.isExpired(System.currentTimeMillis())) {
+                finishTransfer("Leadership transfer timed out");
             }
+
+            return;
         }
-    }
 
-    private void printAndSend(Message message) {
-        System.out.println(getStatus() + " Sending message (" + message.getAddress() + "): " + message.print());
+        Peer peer = state.peers.get(transfer.getTarget());
 
-        synchronized (responses) {
-            responses.add(message);
-            responses.notify();
+        if (peer == null || transfer.isExpired(System.currentTimeMillis())) {
+            System.out.println(getStatus() + " Leadership transfer to node " + (transfer.getTarget() + 1) + " aborted");
+            finishTransfer("Leadership transfer timed out");
+        } else if (!transfer.isSent() && peer.getMatchIndex() == rsm.size()) {
+            printAndSend(new TimeoutNowRequest(peer.getAddress(), state.term, configuration.getNodeNumber()));
+            transfer.sent();
+            state.leaseStart = 0;
+            state.leaseRevokedTerm = state.term;
         }
     }
 
-    private String getStatus() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-        sb.append(state.state.name());
-        sb.append("; term = ");
-        sb.append(state.term);
-        sb.append("]");
-        return sb.toString();
+    private void finishTransfer(String error) {
+        ClientServerRequest request = transfer.getRequest();
+        transfer = null;
+
+        if (request != null) {
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    error,
+                    error == null,
+                    request.getRedirections()
+            ));
+        }
     }
 
-    private int getTimeout() {
-        if (state.state.equals(State.LEADER)) {
-            return configuration.getTimeout() / 2;
-        } else {
-            return configuration.getTimeout();
+    private void startMove(ClientServerRequest request) throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
+        int from = parseId(request.getKey());
+        int to = parseId(request.getValue());
+        String error = null;
+
+        if (from < 0 || to < 0) {
+            error = "Node id is not a positive number";
+        } else if (move != null) {
+            error = "Replica move in progress";
+        } else if (!membership.isVoter(from)) {
+            error = "Node is not a voter";
+        } else if (membership.contains(to)) {
+            error = "Node is already a member";
+        } else if (getNodeAddress(to) == null) {
+            error = "Bad node address";
+        }
+
+        if (error != null) {
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    error,
+                    false,
+                    request.getRedirections()
+            ));
+            return;
         }
+
+        beginMove(from, to, request);
     }
 
-    private void toCommit() throws ParseException, IOException {
-        for (int i = state.commitIndex; i < rsm.size(); i++) {
-            int count = 1;
+    private boolean balanceReplicas(double load) throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
 
-            for (int j = 0; j < configuration.getServersCount(); j++) {
-                if (j != configuration.getNodeNumber() && state.matchLogIndex.get(j) > i) {
-                    count++;
-                }
-            }
+        if (!configuration.isPartialReplication() || move != null || load <= 0 || membership.getIndex() >= state.commitIndex || !hasCommittedInTerm()) {
+            return false;
+        }
 
-            Message message = rsm.getLogEntry(i);
-            Entry entry;
+        Map<Integer, Double> loads = getNodeLoads();
+        int from = -1;
+        int to = -1;
 
-            if (message instanceof Entry) {
-                entry = (Entry) message;
-            } else {
-                throw new AssertionError();
+        for (int id : membership.getVoters()) {
+            if (id != configuration.getNodeNumber() && (from == -1 || loads.get(id) > loads.get(from))) {
+                from = id;
             }
+        }
 
-            if (count > configuration.getServersCount() / 2 && entry.getTerm() == state.term) {
-                commit(i + 1);
+        for (int id : loads.keySet()) {
+            if (!membership.contains(id) && getNodeAddress(id) != null && (to == -1 || loads.get(id) < loads.get(to))) {
+                to = id;
             }
         }
-    }
 
-    private void commit(int commitIndex) throws ParseException, IOException {
-        List<ClientServerResponse> responses = state.commit(commitIndex);
-        responses.forEach(this::printAndSend);
-    }
+        if (from == -1 || to == -1 || loads.get(from) < 1 || loads.get(to) + load >= loads.get(from) - load) {
+            return false;
+        }
 
-    private void close() throws IOException {
-        active = false;
-        factory.close();
-        rsm.close();
-        interrupt();
+        System.out.println(getStatus() + " Node " + (from + 1) + " is overloaded (" + String.format("%.2f", loads.get(from)) + "), node " + (to + 1) + " is not (" + String.format("%.2f", loads.get(to)) + ")");
+        beginMove(from, to, null);
+        return true;
     }
 
-    private class ServerState {
-        State state;
-        int term;
-        int votedFor;
-        int votesCount;
-        int leader;
-        int commitIndex;
-        long lastMessageTime;
-        List<Integer> nextLogIndex;
-        List<Integer> matchLogIndex;
+    private Map<Integer, Double> getNodeLoads() {
+        Map<Integer, Double> loads = new TreeMap<>();
 
-        private final String serverStateFileName;
+        for (int id : configuration.getNodeIds()) {
+            loads.put(id, 0.0);
+        }
 
-        ServerState() throws IOException {
-            leader = -1;
-            serverStateFileName = "dkvs_" + (configuration.getNodeNumber() + 1) + ".state";
-            nextLogIndex = new ArrayList<>();
-            matchLogIndex = new ArrayList<>();
+        for (int i = 0; i < configuration.getGroups(); i++) {
+            Membership groupMembership = node.getMembership(i);
+            double groupLoad = groupMembership.contains(configuration.getNodeNumber()) ? getLoad(node.getMetrics(i)) : 0;
 
-            for (int i = 0; i < configuration.getServersCount(); i++) {
-                nextLogIndex.add(rsm.size());
-                matchLogIndex.add(0);
+            for (int id : groupMembership.getMembers()) {
+                loads.merge(id, groupMembership.isVoter(id) ? groupLoad : 0, Double::sum);
             }
+        }
+
+        return loads;
+    }
+
+    private void beginMove(int from, int to, ClientServerRequest request) throws ParseException, IOException {
+        System.out.println(getStatus() + " Moving replica from node " + (from + 1) + " to node " + (to + 1));
+        move = new ReplicaMove(from, to, request);
+        moveReplica();
+    }
+
+    private void moveReplica() throws ParseException, IOException {
+        if (move == null) {
+            return;
+        }
+
+        if (!state.state.equals(State.LEADER)) {
+            finishMove("Leadership moved to another node");
+            return;
+        }
+
+        Membership membership = rsm.getMembership();
+
+        if (membership.getIndex() >= state.commitIndex || !hasCommittedInTerm()) {
+            return;
+        }
+
+        int from = move.getFrom();
+        int to = move.getTo();
+        Peer peer = state.peers.get(to);
+
+        if (!move.isAdded()) {
+            move.added();
+            appendMembership(membership.withLearner(rsm.size(), to, getNodeAddress(to), true), null);
+        } else if (!membership.contains(to)) {
+            finishMove("Membership changed during the move");
+        } else if (!membership.isVoter(to)) {
+            if (peer == null || System.currentTimeMillis() - peer.getLastContact() >= configuration.getBalanceInterval()) {
+                System.out.println(getStatus() + " Node " + (to + 1) + " is unreachable, cancelling replica move");
+                finishMove("Node is unreachable");
+                appendMembership(membership.without(rsm.size(), to), null);
+            }
+        } else if (membership.contains(from)) {
+            ClientServerRequest request = move.getRequest();
+            move = null;
+            appendMembership(membership.without(rsm.size(), from), request);
+        } else {
+            finishMove(null);
+        }
+    }
+
+    private void appendMembership(Membership next, ClientServerRequest request) throws ParseException, IOException {
+        System.out.println(getStatus() + " Changing membership to " + next);
+
+        if (request != null) {
+            rsm.add(next.toEntry(state.term), request);
+        } else {
+            rsm.add(next.toEntry(state.term));
+        }
+
+        updatePeers();
+        toCommit();
+        replicate();
+    }
+
+    private void finishMove(String error) {
+        ClientServerRequest request = move.getRequest();
+        move = null;
+
+        if (request != null) {
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    error,
+                    error == null,
+                    request.getRedirections()
+            ));
+        }
+    }
+
+    private InetSocketAddress getNodeAddress(int id) {
+        if (configuration.getAddress(id) != null) {
+            return configuration.getAddress(id);
+        }
+
+        for (int i = 0; i < configuration.getGroups(); i++) {
+            if (node.getMembership(i).contains(id)) {
+                return node.getMembership(i).getAddress(id);
+            }
+        }
+
+        return null;
+    }
+
+    private static int parseId(String id) {
+        try {
+            return Integer.parseInt(id) - 1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void processTimeoutNowRequest(TimeoutNowRequest request) throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
+
+        if (request.getTerm() != state.term || !state.state.equals(State.FOLLOWER) || !membership.isVoter(configuration.getNodeNumber())) {
+            return;
+        }
+
+        System.out.println(getStatus() + " Leadership transfer from node " + (request.getLeaderId() + 1) + ", starting election");
+        startElection(membership, true);
+    }
+
+    private void promoteLearners() throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
+
+        if (!state.state.equals(State.LEADER) || membership.getIndex() >= state.commitIndex || !hasCommittedInTerm()) {
+            return;
+        }
+
+        for (int id : membership.getMembers()) {
+            Peer peer = state.peers.get(id);
+
+            if (membership.isStaging(id) && peer != null && peer.getMatchIndex() >= state.commitIndex) {
+                Membership next = membership.withVoter(rsm.size(), id);
+                System.out.println(getStatus() + " Promoting node " + (id + 1) + ", membership is " + next);
+                rsm.add(next.toEntry(state.term));
+                updatePeers();
+                toCommit();
+                replicate();
+                return;
+            }
+        }
+    }
+
+    private void updatePeers() {
+        Membership latest = rsm.getMembership();
+        Membership committed = rsm.getCommittedMembership();
+
+        if (latest == membership && committed == committedMembership) {
+            return;
+        }
+
+        membership = latest;
+        committedMembership = committed;
+        Set<Integer> ids = new TreeSet<>(latest.getMembers());
+        ids.addAll(committed.getMembers());
+        ids.remove(configuration.getNodeNumber());
+
+        state.peers.values().removeIf(peer -> {
+            if (ids.contains(peer.getId())) {
+                return false;
+            }
+
+            peer.finishTransfer();
+            return true;
+        });
+
+        for (int id : ids) {
+            if (!state.peers.containsKey(id)) {
+                InetSocketAddress address = latest.contains(id) ? latest.getAddress(id) : committed.getAddress(id);
+                Peer peer = new Peer(id, address, configuration.getMaxInflight());
+                peer.reset(rsm.size());
+                peer.contacted(System.currentTimeMillis());
+                state.peers.put(id, peer);
+            }
+        }
+
+        if (state.state != null && state.state.equals(State.LEADER) && !committed.isVoter(configuration.getNodeNumber())) {
+            System.out.println(getStatus() + " Removed from the cluster, stepping down");
+            state.state = State.FOLLOWER;
+            state.leader = -1;
+        }
+    }
+
+    private Entry toEntry(ClientServerRequest request) {
+        switch (request.getOperation()) {
+            case MSET:
+            case MDELETE:
+                return new Entry(state.term, request.getOperation(), request.getKeys(), request.getValues());
+            case CAS:
+            case SET_IF_ABSENT:
+            case DELETE_IF_EQUALS:
+                return new Entry(state.term, request.getOperation(), request.getKey(), request.getValue(), request.getExpected(), request.getExpectedVersion());
+            case SET:
+                long deadline = request.getTtl() > 0 ? System.currentTimeMillis() + request.getTtl() : 0;
+                return new Entry(state.term, request.getOperation(), request.getKey(), request.getValue(), deadline);
+            default:
+                return new Entry(state.term, request.getOperation(), request.getKey(), request.getValue());
+        }
+    }
+
+    private static boolean isCounter(ClientServerRequest request) {
+        switch (request.getOperation()) {
+            case INCR:
+            case DECR:
+            case ADD:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long getDelta(ClientServerRequest request) {
+        switch (request.getOperation()) {
+            case INCR:
+                return 1;
+            case DECR:
+                return -1;
+            default:
+                return Long.parseLong(request.getValue());
+        }
+    }
+
+    private void addCounter(ClientServerRequest request) {
+        try {
+            getDelta(request);
+        } catch (NumberFormatException e) {
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    "Delta is not a number",
+                    false,
+                    request.getRedirections()
+            ));
+            return;
+        }
+
+        pendingCounters.computeIfAbsent(request.getKey(), key -> new ArrayList<>()).add(request);
+    }
+
+    private void appendCounters() throws ParseException, IOException {
+        if (pendingCounters.isEmpty()) {
+            return;
+        }
+
+        if (!state.state.equals(State.LEADER)) {
+            for (List<ClientServerRequest> counters : pendingCounters.values()) {
+                for (ClientServerRequest request : counters) {
+                    printAndSend(new ClientServerResponse(
+                            request.getAddress(),
+                            request.getOperation(),
+                            "Unknown leader",
+                            false,
+                            request.getRedirections()
+                    ));
+                }
+            }
+
+            pendingCounters.clear();
+            return;
+        }
+
+        for (Map.Entry<String, List<ClientServerRequest>> counters : pendingCounters.entrySet()) {
+            long[] deltas = new long[counters.getValue().size()];
+
+            for (int i = 0; i < deltas.length; i++) {
+                deltas[i] = getDelta(counters.getValue().get(i));
+            }
+
+            rsm.add(new Entry(state.term, Operation.ADD, counters.getKey(), deltas), counters.getValue());
+        }
+
+        pendingCounters.clear();
+        toCommit();
+        replicate();
+    }
+
+    private void appendExpired() throws ParseException, IOException {
+        long time = System.currentTimeMillis();
+        List<String> keys = rsm.expire(time, MAX_BATCH);
+
+        if (!state.state.equals(State.LEADER) || keys.isEmpty() || expireIndex >= state.commitIndex) {
+            return;
+        }
+
+        rsm.add(new Entry(state.term, Operation.EXPIRE, keys, time));
+        expireIndex = rsm.size() - 1;
+        toCommit();
+        replicate();
+    }
+
+    private void balance() throws ParseException, IOException {
+        long time = System.currentTimeMillis();
+        metrics.roll(time);
+
+        if (!state.state.equals(State.LEADER) || configuration.getGroups() == 1 && !configuration.isPartialReplication() || time - lastBalanceTime < configuration.getBalanceInterval()) {
+            return;
+        }
+
+        lastBalanceTime = time;
+        ShardState shards = rsm.getShards();
+        double load = getLoad(metrics);
+
+        if (balanceReplicas(load)) {
+            return;
+        }
+
+        if (shards.count() != ownedSlots) {
+            ownedSlots = shards.count();
+            return;
+        }
+
+        if (shards.hasMigration() || load < 1) {
+            return;
+        }
+
+        int target = -1;
+        double targetLoad = load / 2;
+
+        for (int i = 0; i < configuration.getGroups(); i++) {
+            double groupLoad = getLoad(node.getMetrics(i));
+
+            if (i != group && node.getMembership(i).contains(configuration.getNodeNumber()) && groupLoad < targetLoad) {
+                target = i;
+                targetLoad = groupLoad;
+            }
+        }
+
+        int split = metrics.getSplitSlot(shards);
+
+        if (target == -1 || split < 0) {
+            return;
+        }
+
+        int end = shards.getRunEnd(split);
+        System.out.println(getStatus() + " Splitting slots " + split + "-" + (end - 1) + " to group " + target + " (" + metrics + ")");
+        rsm.add(new Entry(state.term, Operation.MIGRATE, (String) null, new long[]{split, end, target}));
+        toCommit();
+        replicate();
+    }
+
+    private double getLoad(LoadMetrics metrics) {
+        double load = 0;
+
+        if (configuration.getSplitOps() > 0) {
+            load = Math.max(load, metrics.getOpsRate() / configuration.getSplitOps());
+        }
+
+        if (configuration.getSplitBytes() > 0) {
+            load = Math.max(load, metrics.getBytesRate() / configuration.getSplitBytes());
+        }
+
+        if (configuration.getSplitLatency() > 0) {
+            load = Math.max(load, metrics.getApplyLatency() / configuration.getSplitLatency());
+        }
+
+        return load;
+    }
+
+    private void migrate() throws ParseException, IOException {
+        ShardState shards = rsm.getShards();
+
+        if (!state.state.equals(State.LEADER) || !shards.hasMigration()) {
+            migration = null;
+            return;
+        }
+
+        if (migration == null || !migration.matches(shards)) {
+            migration = new MigrationTask(shards.getFrom(), shards.getTo(), shards.getTarget());
+        }
+
+        long time = System.currentTimeMillis();
+
+        if (migration.isInflight()) {
+            if (migration.needsResend(time, configuration.getTimeout())) {
+                migration.sent(migration.getRequest(), time);
+                sendMigrate(migration.getRequest());
+            }
+
+            return;
+        }
+
+        int batch = configuration.getMigrateBatch();
+
+        switch (migration.getPhase()) {
+            case PURGE_TARGET:
+                sendMigrate(Operation.PURGE, Collections.emptyList());
+                break;
+            case COPY:
+                List<String> keys = new ArrayList<>();
+                migration.setCursor(rsm.collect(migration.getCursor(), batch, batch * 16, keys));
+
+                if (migration.getCursor() == null) {
+                    migration.setPhase(shards.isReleased() ? MigrationTask.Phase.FINAL : MigrationTask.Phase.DIRTY);
+                }
+
+                if (!keys.isEmpty()) {
+                    sendMigrate(Operation.IMPORT, keys);
+                }
+
+                break;
+            case DIRTY:
+                if (rsm.getDirtyCount() > batch) {
+                    sendMigrate(Operation.IMPORT, rsm.pollDirty(batch));
+                } else {
+                    rsm.add(new Entry(state.term, Operation.RELEASE, (String) null, new long[]{migration.getFrom(), migration.getTo(), migration.getTarget()}));
+                    migration.setPhase(MigrationTask.Phase.RELEASING);
+                    toCommit();
+                    replicate();
+                }
+
+                break;
+            case RELEASING:
+                if (shards.isReleased()) {
+                    migration.setPhase(MigrationTask.Phase.FINAL);
+                }
+
+                break;
+            case FINAL:
+                keys = rsm.pollDirty(batch);
+
+                if (keys.isEmpty()) {
+                    migration.setPhase(MigrationTask.Phase.ADOPT);
+                    sendMigrate(Operation.ADOPT, keys);
+                } else {
+                    sendMigrate(Operation.IMPORT, keys);
+                }
+
+                break;
+            case ADOPT:
+                sendMigrate(Operation.ADOPT, Collections.emptyList());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void sendMigrate(Operation operation, List<String> keys) {
+        List<String> values = new ArrayList<>(keys.size());
+        long[] deadlines = new long[keys.size()];
+
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(rsm.get(keys.get(i)));
+            deadlines[i] = rsm.getDeadline(keys.get(i));
+        }
+
+        MigrateRequest request = new MigrateRequest(null, group, nextMigrateRequestId++, operation, migration.getFrom(), migration.getTo(), keys, values, deadlines);
+        migration.sent(request, System.currentTimeMillis());
+        sendMigrate(request);
+    }
+
+    private void sendMigrate(MigrateRequest request) {
+        SocketAddress address = node.getLeaderAddress(migration.getTarget());
+
+        if (address == null) {
+            return;
+        }
+
+        printAndSend(new GroupMessage(migration.getTarget(), new MigrateRequest(
+                address,
+                request.getGroup(),
+                request.getRequestId(),
+                request.getOperation(),
+                request.getFrom(),
+                request.getTo(),
+                request.getKeys(),
+                request.getValues(),
+                request.getDeadlines()
+        )));
+    }
+
+    private void processMigrateRequest(MigrateRequest request) throws ParseException, IOException {
+        if (!state.state.equals(State.LEADER)) {
+            replyMigrate(request, false);
+            return;
+        }
+
+        switch (request.getOperation()) {
+            case PURGE:
+            case ADOPT:
+                rsm.add(new Entry(state.term, request.getOperation(), (String) null, new long[]{request.getFrom(), request.getTo(), request.getGroup()}));
+                break;
+            case IMPORT:
+                rsm.add(new Entry(state.term, request.getOperation(), request.getKeys(), request.getValues(), request.getDeadlines()));
+                break;
+            default:
+                replyMigrate(request, false);
+                return;
+        }
+
+        pendingMigrations.put(rsm.size() - 1, request);
+        toCommit();
+        replicate();
+    }
+
+    private void processMigrateResponse(MigrateResponse response) throws ParseException, IOException {
+        if (migration == null || !response.isSuccess() || !migration.acknowledge(response.getRequestId())) {
+            return;
+        }
+
+        switch (migration.getPhase()) {
+            case PURGE_TARGET:
+                migration.setPhase(MigrationTask.Phase.COPY);
+                break;
+            case ADOPT:
+                rsm.add(new Entry(state.term, Operation.PURGE, (String) null, new long[]{migration.getFrom(), migration.getTo(), migration.getTarget()}));
+                migration.setPhase(MigrationTask.Phase.PURGE_SOURCE);
+                toCommit();
+                replicate();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void replyMigrate(MigrateRequest request, boolean success) {
+        printAndSend(new GroupMessage(request.getGroup(), new MigrateResponse(request.getAddress(), request.getRequestId(), success)));
+    }
+
+    private void processClientServerResponse(ClientServerResponse response) {
+        ClientServerResponse localResponse = new ClientServerResponse(
+                response.getRedirections().get(response.getRedirections().size() - 1),
+                response.getOperation(),
+                response.getResult(),
+                response.isSuccess(),
+                response.getVersion(),
+                response.getKeys(),
+                response.getResults(),
+                response.getSuccesses(),
+                response.getRedirections()
+        );
+        localResponse.getRedirections().remove(localResponse.getRedirections().size() - 1);
+        printAndSend(localResponse);
+    }
+
+    private void processAppendEntriesRequest(AppendEntriesRequest request) throws ParseException, IOException {
+        if (request.getTerm() >= state.term) {
+            state.state = State.FOLLOWER;
+            state.setTerm(request.getTerm());
+            state.leader = request.getLeaderId();
+            resetElectionTimer();
+            state.leaderContactTime = state.lastMessageTime;
+            state.leaderCommit = request.getLeaderCommit();
+        }
+
+        if (request.getTerm() == state.term && (request.getPrevLogIndex() == -1 || rsm.matches(request.getPrevLogIndex(), request.getPrevLogTerm()))) {
+            List<Message> entries = request.getEntries();
+            int index = request.getPrevLogIndex() + 1;
+            int matched = 0;
+
+            while (matched < entries.size() && rsm.matches(index + matched, ((Entry) entries.get(matched)).getTerm())) {
+                matched++;
+            }
+
+            if (matched < entries.size()) {
+                rsm.removeAfter(index + matched - 1);
+                rsm.restore(entries.subList(matched, entries.size()));
+            }
+
+            int length = index + entries.size();
+
+            if (Math.min(request.getLeaderCommit(), length) > state.commitIndex) {
+                commit(Math.min(request.getLeaderCommit(), length));
+            }
+
+            printAndSend(new AppendEntriesResult(request.getAddress(), state.term, true, length, configuration.getNodeNumber(), request.getReadSequence()));
+        } else if (request.getTerm() == state.term) {
+            int conflictTerm = -1;
+            int conflictIndex = rsm.size();
+
+            if (request.getPrevLogIndex() < rsm.size()) {
+                conflictTerm = rsm.getTerm(request.getPrevLogIndex());
+                conflictIndex = rsm.getFirstIndexOfTerm(request.getPrevLogIndex());
+            }
+
+            printAndSend(new AppendEntriesResult(request.getAddress(), state.term, false, rsm.size(), configuration.getNodeNumber(), conflictTerm, conflictIndex, request.getReadSequence()));
+        } else {
+            printAndSend(new AppendEntriesResult(request.getAddress(), state.term, false, rsm.size(), configuration.getNodeNumber(), request.getReadSequence()));
+        }
+    }
+
+    private void processAppendEntriesResult(AppendEntriesResult result) throws ParseException, IOException {
+        if (result.getTerm() > state.term) {
+            state.state = State.FOLLOWER;
+            state.leader = -1;
+            state.setTerm(result.getTerm());
+            state.setVotedFor(-1);
+            return;
+        }
+
+        if (!state.state.equals(State.LEADER) || result.getTerm() < state.term) {
+            return;
+        }
+
+        Peer peer = state.peers.get(result.getId());
+
+        if (peer == null) {
+            return;
+        }
+
+        peer.contacted(System.currentTimeMillis());
+        peer.acknowledgeRead(result.getReadSequence());
+        updateLease();
+        checkReadRound();
+
+        if (result.isSuccess()) {
+            peer.acknowledge(result.getLength());
+            toCommit();
+        } else if (result.getConflictTerm() != -1) {
+            int last = rsm.getLastIndexOfTerm(result.getConflictTerm());
+            peer.reject(last == -1 ? result.getConflictIndex() : last + 1);
+        } else if (result.getConflictIndex() != -1) {
+            peer.reject(result.getConflictIndex());
+        } else {
+            peer.reject(Math.min(peer.getNextIndex() - 1, result.getLength()));
+        }
+
+        replicate(peer, false);
+    }
+
+    private void processInstallSnapshotRequest(InstallSnapshotRequest request) throws IOException {
+        if (request.getTerm() >= state.term) {
+            state.state = State.FOLLOWER;
+            state.setTerm(request.getTerm());
+            state.leader = request.getLeaderId();
+            state.leaderContactTime = System.currentTimeMillis();
+            resetElectionTimer();
+        }
+
+        int index = request.getLastIncludedIndex();
+
+        if (request.getTerm() < state.term) {
+            printAndSend(new InstallSnapshotResponse(request.getAddress(), state.term, configuration.getNodeNumber(), index, 0, false));
+            return;
+        }
+
+        if (index <= state.commitIndex) {
+            printAndSend(new InstallSnapshotResponse(request.getAddress(), state.term, configuration.getNodeNumber(), index, 0, true));
+            return;
+        }
+
+        long length = rsm.receiveSnapshot(index, request.getOffset(), request.getData());
+
+        if (request.isDone() && length == request.getOffset() + request.getData().length) {
+            if (rsm.installSnapshot()) {
+                state.commitIndex = rsm.getCommitIndex();
+                printAndSend(new InstallSnapshotResponse(request.getAddress(), state.term, configuration.getNodeNumber(), index, length, true));
+                return;
+            }
+
+            length = 0;
+        }
+
+        printAndSend(new InstallSnapshotResponse(request.getAddress(), state.term, configuration.getNodeNumber(), index, length, false));
+    }
+
+    private void processInstallSnapshotResponse(InstallSnapshotResponse response) throws ParseException, IOException {
+        if (response.getTerm() > state.term) {
+            state.state = State.FOLLOWER;
+            state.leader = -1;
+            state.setTerm(response.getTerm());
+            state.setVotedFor(-1);
+            return;
+        }
+
+        if (!state.state.equals(State.LEADER) || response.getTerm() < state.term) {
+            return;
+        }
+
+        Peer peer = state.peers.get(response.getId());
+
+        if (peer == null) {
+            return;
+        }
+
+        peer.contacted(System.currentTimeMillis());
+        SnapshotTransfer transfer = peer.getTransfer();
+
+        if (response.isDone()) {
+            peer.installed(response.getLastIncludedIndex());
+            toCommit();
+        } else if (transfer != null && transfer.getIndex() == response.getLastIncludedIndex()) {
+            transfer.acknowledge(response.getOffset());
+        } else {
+            return;
+        }
+
+        replicate(peer, false);
+    }
+
+    private void processReadIndexRequest(ReadIndexRequest request) {
+        if (hasLease()) {
+            answerRead(request);
+        } else if (state.state.equals(State.LEADER)) {
+            leaderReads.add(request, state.commitIndex);
+            startReadRound();
+        } else {
+            printAndSend(new ReadIndexResponse(request.getAddress(), state.term, request.getRequestId(), -1, false));
+        }
+    }
+
+    private void processReadIndexResponse(ReadIndexResponse response) {
+        ClientServerRequest request = forwardedReads.remove(response.getRequestId());
+
+        if (request == null) {
+            return;
+        }
+
+        if (response.isSuccess()) {
+            followerReads.addConfirmed(request, response.getReadIndex());
+            serveReads();
+        } else {
+            failRead(request);
+        }
+    }
+
+    private void processVoteRequest(VoteRequest request) throws IOException {
+        if (request.isPreVote()) {
+            boolean granted = request.getTerm() > state.term && isUpToDate(request) && !hasLeader();
+            printAndSend(new VoteResponse(request.getAddress(), granted ? request.getTerm() : state.term, configuration.getNodeNumber(), granted, true));
+        } else if (request.getTerm() < state.term || (isLeaseProtected() && !request.isTransfer())) {
+            printAndSend(new VoteResponse(request.getAddress(), state.term, configuration.getNodeNumber(), false, false));
+        } else {
+            if (request.getTerm() > state.term) {
+                state.state = State.FOLLOWER;
+                state.setTerm(request.getTerm());
+                state.setVotedFor(-1);
+            }
+
+            if (isUpToDate(request) && (state.votedFor == -1 || state.votedFor == request.getCandidateId())) {
+                state.setVotedFor(request.getCandidateId());
+                printAndSend(new VoteResponse(request.getAddress(), state.term, configuration.getNodeNumber(), true, false));
+            } else {
+                printAndSend(new VoteResponse(request.getAddress(), state.term, configuration.getNodeNumber(), false, false));
+            }
+        }
+    }
+
+    private boolean isUpToDate(VoteRequest request) {
+        int lastLogTerm = rsm.size() == 0 ? -2 : rsm.getTerm(rsm.size() - 1);
+        return request.getLastLogTerm() > lastLogTerm || (request.getLastLogTerm() == lastLogTerm && request.getLastLogIndex() >= rsm.size() - 1);
+    }
+
+    private boolean hasLeader() {
+        return state.state.equals(State.LEADER)
+                || (state.leader != -1 && System.currentTimeMillis() - state.leaderContactTime < configuration.getTimeout());
+    }
+
+    private void processVoteResponse(VoteResponse response) throws ParseException, IOException {
+        if (response.isPreVote()) {
+            if (!state.state.equals(State.PRE_CANDIDATE)) {
+                return;
+            }
+
+            if (response.getTerm() == state.term + 1 && response.isVoteGranted()) {
+                addVote(response.getVoterId());
+
+                if (state.votes.size() >= rsm.getMembership().getQuorum()) {
+                    startElection(rsm.getMembership(), false);
+                }
+            } else if (response.getTerm() > state.term) {
+                state.setTerm(response.getTerm());
+                state.setVotedFor(-1);
+                state.state = State.FOLLOWER;
+            }
+
+            return;
+        }
+
+        if (!state.state.equals(State.CANDIDATE)) {
+            return;
+        }
+
+        if (response.getTerm() == state.term && response.isVoteGranted()) {
+            addVote(response.getVoterId());
+
+            if (state.votes.size() >= rsm.getMembership().getQuorum()) {
+                becomeLeader();
+                processTimeout();
+            }
+        } else if (response.getTerm() > state.term) {
+            state.setTerm(response.getTerm());
+            state.setVotedFor(-1);
+            state.state = State.FOLLOWER;
+        }
+    }
+
+    private void addVote(int id) {
+        if (rsm.getMembership().isVoter(id)) {
+            state.votes.add(id);
+        }
+    }
+
+    private void process(Message message) throws ParseException, IOException {
+        System.out.println(getStatus() + " Message received (" + message.getAddress() + "): " + message.print());
+
+        if (message instanceof ClientServerRequest) {
+            processClientServerRequest((ClientServerRequest) message);
+        } else if (message instanceof ClientServerResponse) {
+            processClientServerResponse((ClientServerResponse) message);
+        } else if (message instanceof AppendEntriesRequest) {
+            processAppendEntriesRequest((AppendEntriesRequest) message);
+        } else if (message instanceof AppendEntriesResult) {
+            processAppendEntriesResult((AppendEntriesResult) message);
+        } else if (message instanceof InstallSnapshotRequest) {
+            processInstallSnapshotRequest((InstallSnapshotRequest) message);
+        } else if (message instanceof InstallSnapshotResponse) {
+            processInstallSnapshotResponse((InstallSnapshotResponse) message);
+        } else if (message instanceof ReadIndexRequest) {
+            processReadIndexRequest((ReadIndexRequest) message);
+        } else if (message instanceof ReadIndexResponse) {
+            processReadIndexResponse((ReadIndexResponse) message);
+        } else if (message instanceof VoteRequest) {
+            processVoteRequest((VoteRequest) message);
+        } else if (message instanceof VoteResponse) {
+            processVoteResponse((VoteResponse) message);
+        } else if (message instanceof MigrateRequest) {
+            processMigrateRequest((MigrateRequest) message);
+        } else if (message instanceof MigrateResponse) {
+            processMigrateResponse((MigrateResponse) message);
+        } else if (message instanceof TimeoutNowRequest) {
+            processTimeoutNowRequest((TimeoutNowRequest) message);
+        } else {
+            throw new AssertionError();
+        }
+    }
+
+    private Message getMessage() throws InterruptedException {
+        while (true) {
+            Message message = requests.poll();
+
+            if (message != null) {
+                return message;
+            } else if (woken || isTimedOut()) {
+                woken = false;
+                return null;
+            } else {
+                requests.await(TimeUnit.MILLISECONDS.toNanos(getTimeout() - (System.currentTimeMillis() - state.lastMessageTime)));
+            }
+        }
+    }
+
+    private boolean isTimedOut() {
+        return System.currentTimeMillis() - state.lastMessageTime >= getTimeout();
+    }
+
+    private void wake() {
+        woken = true;
+        requests.signal();
+    }
+
+    private Message pollMessage(long deadline) throws InterruptedException {
+        Message message;
+
+        while ((message = requests.poll()) == null && System.currentTimeMillis() < deadline) {
+            requests.await(TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis()));
+        }
+
+        return message;
+    }
+
+    private void printAndSend(Message message) {
+        System.out.println(getStatus() + " Sending message (" + message.getAddress() + "): " + message.print());
+
+        if (message instanceof AppendEntriesResult) {
+            syncOutbox.add(message);
+        } else {
+            outbox.add(message);
+        }
+    }
+
+    private void flush() throws IOException {
+        applier.flush();
+
+        if (!syncOutbox.isEmpty() && !rsm.isSynced()) {
+            List<Message> messages = new ArrayList<>(syncOutbox);
+            syncOutbox.clear();
+            rsm.sync(() -> {
+                node.send(group, messages);
+                wake();
+            });
+        } else {
+            outbox.addAll(syncOutbox);
+            syncOutbox.clear();
+            rsm.sync(rsm.hasPendingWrites() ? wakeUp : null);
+        }
+
+        if (outbox.isEmpty()) {
+            return;
+        }
+
+        node.send(group, outbox);
+        outbox.clear();
+    }
+
+    private String getStatus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        sb.append(state.state.name());
+        sb.append("; term = ");
+        sb.append(state.term);
+
+        if (configuration.getGroups() > 1) {
+            sb.append("; group = ");
+            sb.append(group);
+        }
+
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private int getTimeout() {
+        if (state.state.equals(State.LEADER)) {
+            return configuration.isLeaseReads() ? getLeaseDuration() / 2 : configuration.getTimeout() / 2;
+        } else {
+            return electionTimeout;
+        }
+    }
+
+    private int getLeaseDuration() {
+        return configuration.getTimeout() - configuration.getClockDrift();
+    }
+
+    private void replicate() {
+        for (Peer peer : state.peers.values()) {
+            replicate(peer, false);
+        }
+    }
+
+    private void replicate(Peer peer, boolean heartbeat) {
+        boolean sent = false;
+
+        if (peer.getTransfer() != null || peer.getNextIndex() < rsm.getFirstIndex()) {
+            sendSnapshot(peer, heartbeat);
+            return;
+        }
+
+        while (peer.canSend() && peer.getNextIndex() < rsm.size()) {
+            int start = peer.getNextIndex();
+            int end = start;
+            int bytes = 0;
+            List<Message> logEntries = new ArrayList<>();
+
+            while (end < rsm.size() && logEntries.size() < configuration.getMaxBatchEntries()) {
+                Entry entry = (Entry) rsm.getLogEntry(end);
+
+                if (!logEntries.isEmpty() && bytes + entry.getSize() > configuration.getMaxBatchBytes()) {
+                    break;
+                }
+
+                logEntries.add(entry);
+                bytes += entry.getSize();
+                end++;
+            }
+
+            sendAppendEntries(peer, start, logEntries);
+            peer.sent(end, System.currentTimeMillis());
+            sent = true;
+        }
+
+        if (!sent && heartbeat && !peer.hasInflight()) {
+            sendAppendEntries(peer, peer.getNextIndex(), Collections.emptyList());
+        }
+    }
+
+    private void sendSnapshot(Peer peer, boolean heartbeat) {
+        SnapshotTransfer transfer = peer.getTransfer();
+
+        try {
+            if (transfer == null) {
+                transfer = rsm.openSnapshot();
+
+                if (transfer == null) {
+                    return;
+                }
+
+                peer.setTransfer(transfer);
+            }
+
+            boolean sent = false;
+
+            while (transfer.canSend(configuration.getMaxInflight())) {
+                int length = transfer.nextChunkSize(configuration.getSnapshotChunkSize());
+
+                if (!snapshotLimiter.tryAcquire(length)) {
+                    break;
+                }
+
+                sendSnapshotChunk(peer, transfer, transfer.read(length), transfer.isLast(length));
+                transfer.sent(length, System.currentTimeMillis());
+                sent = true;
+            }
+
+            if (transfer.needsProbe() || (!sent && heartbeat && !transfer.hasInflight())) {
+                sendSnapshotChunk(peer, transfer, new byte[0], false);
+                transfer.probed(System.currentTimeMillis());
+            }
+        } catch (ParseException | IOException e) {
+            System.out.println("Can't send snapshot: " + e.getMessage());
+            peer.finishTransfer();
+        }
+    }
+
+    private void sendSnapshotChunk(Peer peer, SnapshotTransfer transfer, byte[] chunk, boolean done) {
+        printAndSend(new InstallSnapshotRequest(
+                peer.getAddress(),
+                state.term,
+                configuration.getNodeNumber(),
+                transfer.getIndex(),
+                transfer.getTerm(),
+                transfer.getOffset(),
+                chunk,
+                done
+        ));
+    }
+
+    private void sendAppendEntries(Peer peer, int start, List<Message> logEntries) {
+        int prevLogTerm = start == 0 ? -1 : rsm.getTerm(start - 1);
+
+        printAndSend(new AppendEntriesRequest(
+                peer.getAddress(),
+                state.term,
+                configuration.getNodeNumber(),
+                start - 1,
+                prevLogTerm,
+                logEntries,
+                state.commitIndex,
+                state.readSequence
+        ));
+    }
+
+    private void toCommit() throws ParseException, IOException {
+        Membership membership = rsm.getMembership();
+        int synced = rsm.getSyncedSize();
+
+        for (int i = state.commitIndex; i < rsm.size(); i++) {
+            int count = membership.isVoter(configuration.getNodeNumber()) && synced > i ? 1 : 0;
+
+            for (int j : membership.getVoters()) {
+                Peer peer = state.peers.get(j);
+
+                if (peer != null && peer.getMatchIndex() > i) {
+                    count++;
+                }
+            }
+
+            if (count >= membership.getQuorum() && rsm.getTerm(i) == state.term) {
+                commit(i + 1);
+            }
+        }
+    }
+
+    private void commit(int commitIndex) throws ParseException, IOException {
+        state.commit(commitIndex);
+
+        while (!pendingMigrations.isEmpty() && pendingMigrations.firstKey() < state.commitIndex) {
+            replyMigrate(pendingMigrations.pollFirstEntry().getValue(), true);
+        }
+
+        serveReads();
+    }
+
+    private void becomeLeader() {
+        state.state = State.LEADER;
+        updatePeers();
+        long time = System.currentTimeMillis();
+
+        for (Peer peer : state.peers.values()) {
+            peer.reset(rsm.size());
+            peer.contacted(time);
+        }
+
+        state.leaseStart = 0;
+        leaderSince = time;
+        sequenceTimes.clear();
+        expireIndex = -1;
+        rsm.add(new Entry(state.term, Operation.PING, Collections.emptyList(), Collections.emptyList()));
+    }
+
+    private void startReadRound() {
+        if (!leaderReads.canStartRound()) {
+            return;
+        }
+
+        leaderReads.startRound(++state.readSequence);
+        sequenceTimes.put(state.readSequence, System.currentTimeMillis());
+
+        for (Peer peer : state.peers.values()) {
+            if (peer.getTransfer() == null && peer.getNextIndex() >= rsm.getFirstIndex()) {
+                sendAppendEntries(peer, peer.getNextIndex(), Collections.emptyList());
+            }
+        }
+
+        checkReadRound();
+    }
+
+    private void checkReadRound() {
+        if (leaderReads.getRoundSequence() == 0) {
+            return;
+        }
+
+        Membership membership = rsm.getMembership();
+        int count = membership.isVoter(configuration.getNodeNumber()) ? 1 : 0;
+
+        for (int id : membership.getVoters()) {
+            Peer peer = state.peers.get(id);
+
+            if (peer != null && peer.getReadSequence() >= leaderReads.getRoundSequence()) {
+                count++;
+            }
+        }
+
+        if (count >= membership.getQuorum()) {
+            leaderReads.confirmRound();
+            serveReads();
+            startReadRound();
+        }
+    }
+
+    private void updateLease() {
+        Membership membership = rsm.getMembership();
+        List<Integer> sequences = new ArrayList<>();
+
+        for (int id : membership.getVoters()) {
+            Peer peer = state.peers.get(id);
+            sequences.add(id == configuration.getNodeNumber() ? state.readSequence : (peer == null ? 0 : peer.getReadSequence()));
+        }
+
+        sequences.sort(Collections.reverseOrder());
+        int quorumSequence = sequences.get(membership.getQuorum() - 1);
+        Long sent = sequenceTimes.get(quorumSequence);
+
+        if (sent != null) {
+            state.leaseStart = state.leaseRevokedTerm == state.term ? 0 : Math.max(state.leaseStart, sent);
+            sequenceTimes.headMap(quorumSequence).clear();
+        }
+    }
+
+    private boolean isWithinBound(ClientServerRequest request) {
+        switch (request.getConsistency()) {
+            case ANY:
+                return true;
+            case BOUNDED:
+                long contactTime;
+                int lag;
+
+                if (state.state.equals(State.LEADER)) {
+                    contactTime = state.leaseStart;
+                    lag = 0;
+                } else if (state.state.equals(State.FOLLOWER) && state.leader != -1) {
+                    contactTime = state.leaderContactTime;
+                    lag = Math.max(0, state.leaderCommit - state.commitIndex);
+                } else {
+                    return false;
+                }
+
+                return (request.getMaxLagMillis() < 0 || System.currentTimeMillis() - contactTime <= request.getMaxLagMillis())
+                        && (request.getMaxLagEntries() < 0 || lag <= request.getMaxLagEntries());
+            default:
+                return false;
+        }
+    }
+
+    private boolean hasLease() {
+        return configuration.isLeaseReads()
+                && state.state.equals(State.LEADER)
+                && System.currentTimeMillis() < state.leaseStart + getLeaseDuration()
+                && transfer == null
+                && state.leaseRevokedTerm != state.term
+                && hasCommittedInTerm();
+    }
+
+    private boolean isLeaseProtected() {
+        if (!configuration.isLeaseReads()) {
+            return false;
+        }
+
+        return state.state.equals(State.LEADER)
+                || (state.state.equals(State.FOLLOWER) && state.leader != -1 && System.currentTimeMillis() - state.lastMessageTime < configuration.getTimeout());
+    }
+
+    private boolean hasCommittedInTerm() {
+        return state.commitIndex > 0 && rsm.getTerm(state.commitIndex - 1) == state.term;
+    }
+
+    private void serveReads() {
+        followerReads.pollReady(state.commitIndex).forEach(read -> answerRead(read.getRequest()));
+
+        if (state.state.equals(State.LEADER) && hasCommittedInTerm()) {
+            leaderReads.pollReady(state.commitIndex).forEach(read -> answerRead(read.getRequest()));
+        }
+    }
+
+    private void answerRead(Message message) {
+        if (message instanceof ReadIndexRequest) {
+            ReadIndexRequest request = (ReadIndexRequest) message;
+            printAndSend(new ReadIndexResponse(request.getAddress(), state.term, request.getRequestId(), state.commitIndex, true));
+        } else {
+            applier.read((ClientServerRequest) message);
+        }
+    }
+
+    private void failRead(Message message) {
+        if (message instanceof ReadIndexRequest) {
+            ReadIndexRequest request = (ReadIndexRequest) message;
+            printAndSend(new ReadIndexResponse(request.getAddress(), state.term, request.getRequestId(), -1, false));
+        } else {
+            ClientServerRequest request = (ClientServerRequest) message;
+            printAndSend(new ClientServerResponse(
+                    request.getAddress(),
+                    request.getOperation(),
+                    "Unknown leader",
+                    false,
+                    request.getRedirections()
+            ));
+        }
+    }
+
+    private void failStaleReads() {
+        if (!state.state.equals(State.LEADER) && !leaderReads.isEmpty()) {
+            leaderReads.drain().forEach(read -> failRead(read.getRequest()));
+        }
+
+        if (!forwardedReads.isEmpty() && state.leader != forwardedReadsLeader) {
+            forwardedReads.values().forEach(this::failRead);
+            forwardedReads.clear();
+        }
+
+        if (!state.state.equals(State.LEADER) && !pendingMigrations.isEmpty()) {
+            pendingMigrations.values().forEach(request -> replyMigrate(request, false));
+            pendingMigrations.clear();
+        }
+    }
+
+    private void close() throws IOException {
+        active = false;
+        applier.close();
+        rsm.close();
+        node.close();
+    }
+
+    private class ServerState {
+        volatile State state;
+        int term;
+        int votedFor;
+        Set<Integer> votes;
+        volatile int leader;
+        int commitIndex;
+        int readSequence;
+        long lastMessageTime;
+        long leaseStart;
+        int leaseRevokedTerm;
+        long leaderContactTime;
+        int leaderCommit;
+        Map<Integer, Peer> peers;
+
+        private final String serverStateFileName;
+
+        ServerState() throws IOException {
+            leader = -1;
+            leaseRevokedTerm = -1;
+            serverStateFileName = name + ".state";
+            peers = new TreeMap<>();
+            votes = new HashSet<>();
 
             try {
                 Scanner scanner = new Scanner(new File(serverStateFileName));
@@ -465,15 +2035,15 @@ public class Server extends Thread {
             writer.close();
         }
 
-        List<ClientServerResponse> commit(int commitIndex) throws ParseException, IOException {
-            List<ClientServerResponse> responses = rsm.commit(this.commitIndex, commitIndex);
+        void commit(int commitIndex) throws ParseException {
+            applier.apply(this.commitIndex, rsm.commit(this.commitIndex, commitIndex));
             this.commitIndex = commitIndex;
-            return responses;
         }
     }
 
     private enum State {
         LEADER,
+        PRE_CANDIDATE,
         CANDIDATE,
         FOLLOWER
     }
@@ -0,0 +1,123 @@
+package com.katsman.dkvs.server.workers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class SnapshotTransfer {
+    private final FileChannel channel;
+    private final int index;
+    private final int term;
+    private final long size;
+    private final Deque<Long> ends;
+
+    private long offset;
+    private long time;
+    private int inflight;
+    private boolean probing;
+
+    public SnapshotTransfer(FileChannel channel, int index, int term) throws IOException {
+        this.channel = channel;
+        this.index = index;
+        this.term = term;
+        size = channel.size();
+        ends = new ArrayDeque<>();
+        probing = true;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getTerm() {
+        return term;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public boolean hasInflight() {
+        return inflight > 0;
+    }
+
+    public boolean needsProbe() {
+        return probing && inflight == 0;
+    }
+
+    public boolean canSend(int maxInflight) {
+        return !probing && inflight < maxInflight && offset < size;
+    }
+
+    public int nextChunkSize(int chunkSize) {
+        return (int) Math.min(chunkSize, size - offset);
+    }
+
+    public byte[] read(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Snapshot was truncated!");
+            }
+        }
+
+        return buffer.array();
+    }
+
+    public boolean isLast(int length) {
+        return offset + length == size;
+    }
+
+    public void sent(int length, long time) {
+        offset += length;
+        ends.add(offset);
+        inflight++;
+        this.time = time;
+    }
+
+    public void probed(long time) {
+        inflight++;
+        this.time = time;
+    }
+
+    public void acknowledge(long length) {
+        inflight = Math.max(0, inflight - 1);
+
+        if (!probing && !ends.isEmpty() && ends.peek() == length) {
+            ends.poll();
+            return;
+        }
+
+        probing = true;
+        ends.clear();
+        offset = Math.min(length, size);
+
+        if (inflight == 0) {
+            probing = false;
+        }
+    }
+
+    public void expire(long time, long timeout) {
+        if (inflight > 0 && time - this.time >= timeout) {
+            inflight = 0;
+            ends.clear();
+            probing = true;
+        }
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.katsman.dkvs.server.workers;
+
+import com.katsman.dkvs.common.messages.Entry;
+import com.katsman.dkvs.common.messages.csp.ClientServerRequest;
+import com.katsman.dkvs.common.messages.csp.ClientServerResponse;
+import com.katsman.dkvs.common.utils.Operation;
+import com.katsman.dkvs.server.utils.ShardMap;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * @author Alexey Katsman
+ * @since 18.10.26
+ */
+
+public class WatchRegistry implements ReplicatedStateMachine.Listener {
+    private final int bufferKeys;
+    private final Map<String, List<Watcher>> keys;
+    private final Map<String, List<Watcher>> prefixes;
+    private final Map<SocketAddress, List<Watcher>> watchersByAddress;
+    private final Set<Watcher> pending;
+
+    private int maxPrefixLength;
+
+    public WatchRegistry(int bufferKeys) {
+        this.bufferKeys = bufferKeys;
+        keys = new HashMap<>();
+        prefixes = new HashMap<>();
+        watchersByAddress = new HashMap<>();
+        pending = new LinkedHashSet<>();
+    }
+
+    public synchronized ClientServerResponse add(ClientServerRequest request, ReplicatedStateMachine rsm) {
+        int from = request.getExpectedVersion();
+        int appliedIndex = rsm.getAppliedIndex();
+
+        if (from >= 0 && from < appliedIndex && from < rsm.getFirstIndex()) {
+            return new ClientServerResponse(request.getAddress(), request.getOperation(), "Index compacted", false, rsm.getFirstIndex(), request.getRedirections());
+        }
+
+        boolean prefix = request.getOperation() == Operation.WATCH_PREFIX;
+        Watcher watcher = new Watcher(request, prefix, Math.max(from, appliedIndex));
+
+        for (int i = from < 0 ? appliedIndex : from; i < appliedIndex; i++) {
+            Entry entry = (Entry) rsm.getLogEntry(i);
+
+            if (!ReplicatedStateMachine.isWrite(entry.getOperation()) && entry.getOperation() != Operation.EXPIRE) {
+                continue;
+            }
+
+            if (entry.getKey() != null && watcher.matches(entry.getKey())) {
+                watcher.offer(entry.getKey(), rsm.get(entry.getKey()), i);
+            }
+
+            for (String key : entry.getKeys()) {
+                if (watcher.matches(key)) {
+                    watcher.offer(key, rsm.get(key), i);
+                }
+            }
+        }
+
+        if (watcher.error != null) {
+            return watcher.fail();
+        }
+
+        if (prefix) {
+            prefixes.computeIfAbsent(watcher.key, key -> new ArrayList<>()).add(watcher);
+            maxPrefixLength = Math.max(maxPrefixLength, watcher.key.length());
+        } else {
+            keys.computeIfAbsent(watcher.key, key -> new ArrayList<>()).add(watcher);
+        }
+
+        watchersByAddress.computeIfAbsent(watcher.address, address -> new ArrayList<>()).add(watcher);
+        watcher.lastIndex = appliedIndex - 1;
+        return watcher.poll();
+    }
+
+    public synchronized int remove(SocketAddress address) {
+        List<Watcher> watchers = watchersByAddress.remove(address);
+
+        if (watchers == null) {
+            return 0;
+        }
+
+        for (Watcher watcher : watchers) {
+            unregister(watcher);
+        }
+
+        return watchers.size();
+    }
+
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized List<ClientServerResponse> drain(Predicate<SocketAddress> connected, Predicate<SocketAddress> writable) {
+        List<ClientServerResponse> responses = new ArrayList<>();
+
+        for (Watcher watcher : new ArrayList<>(pending)) {
+            if (!connected.test(watcher.address)) {
+                remove(watcher.address);
+            } else if (watcher.error != null) {
+                removeWatcher(watcher);
+                responses.add(watcher.fail());
+            } else if (writable.test(watcher.address)) {
+                pending.remove(watcher);
+                responses.add(watcher.poll());
+            }
+        }
+
+        return responses;
+    }
+
+    @Override
+    public synchronized void onChange(String key, String value, int index) {
+        offer(keys.get(key), key, value, index);
+
+        if (!prefixes.isEmpty()) {
+            for (int i = 0; i <= Math.min(key.length(), maxPrefixLength); i++) {
+                offer(prefixes.get(key.substring(0, i)), key, value, index);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onReset(int index) {
+        for (List<Watcher> watchers : watchersByAddress.values()) {
+            for (Watcher watcher : watchers) {
+                watcher.overflow();
+                pending.add(watcher);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onRelease(int from, int to) {
+        for (List<Watcher> watchers : watchersByAddress.values()) {
+            for (Watcher watcher : watchers) {
+                int slot = ShardMap.getSlot(watcher.key);
+
+                if (slot >= from && slot < to) {
+                    watcher.fail("Shard moved");
+                    pending.add(watcher);
+                }
+            }
+        }
+    }
+
+    private void offer(List<Watcher> watchers, String key, String value, int index) {
+        if (watchers == null) {
+            return;
+        }
+
+        for (Watcher watcher : watchers) {
+            if (index >= watcher.fromIndex) {
+                watcher.offer(key, value, index);
+                pending.add(watcher);
+            }
+        }
+    }
+
+    private void removeWatcher(Watcher watcher) {
+        List<Watcher> watchers = watchersByAddress.get(watcher.address);
+
+        if (watchers != null) {
+            watchers.remove(watcher);
+
+            if (watchers.isEmpty()) {
+                watchersByAddress.remove(watcher.address);
+            }
+        }
+
+        unregister(watcher);
+    }
+
+    private void unregister(Watcher watcher) {
+        Map<String, List<Watcher>> watchers = watcher.prefix ? prefixes : keys;
+        List<Watcher> list = watchers.get(watcher.key);
+
+        if (list != null) {
+            list.remove(watcher);
+
+            if (list.isEmpty()) {
+                watchers.remove(watcher.key);
+            }
+        }
+
+        pending.remove(watcher);
+    }
+
+    private class Watcher {
+        final SocketAddress address;
+        final Operation operation;
+        final String key;
+        final boolean prefix;
+        final int fromIndex;
+        final List<InetSocketAddress> redirections;
+        final LinkedHashMap<String, String> buffer;
+
+        int lastIndex;
+        int deliveredIndex;
+        String error;
+
+        Watcher(ClientServerRequest request, boolean prefix, int fromIndex) {
+            address = request.getAddress();
+            operation = request.getOperation();
+            key = request.getKey() == null ? "" : request.getKey();
+            redirections = request.getRedirections();
+            this.prefix = prefix;
+            this.fromIndex = fromIndex;
+            buffer = new LinkedHashMap<>();
+            lastIndex = -1;
+            deliveredIndex = -1;
+        }
+
+        boolean matches(String key) {
+            return prefix ? key.startsWith(this.key) : key.equals(this.key);
+        }
+
+        void offer(String key, String value, int index) {
+            lastIndex = Math.max(lastIndex, index);
+
+            if (error != null) {
+                return;
+            }
+
+            if (!buffer.containsKey(key) && buffer.size() >= bufferKeys) {
+                overflow();
+                return;
+            }
+
+            buffer.remove(key);
+            buffer.put(key, value);
+        }
+
+        void overflow() {
+            fail("Watch buffer overflow");
+        }
+
+        void fail(String error) {
+            if (this.error == null) {
+                this.error = error;
+            }
+
+            buffer.clear();
+        }
+
+        ClientServerResponse fail() {
+            return new ClientServerResponse(address, operation, error, false, deliveredIndex, redirections);
+        }
+
+        ClientServerResponse poll() {
+            List<String> changedKeys = new ArrayList<>(buffer.keySet());
+            List<String> values = new ArrayList<>(buffer.values());
+            List<Boolean> present = new ArrayList<>(values.size());
+
+            for (String value : values) {
+                present.add(value != null);
+            }
+
+            buffer.clear();
+            deliveredIndex = lastIndex;
+            return new ClientServerResponse(address, operation, null, true, lastIndex, changedKeys, values, present, redirections);
+        }
+    }
+}